@@ -1,6 +1,45 @@
 //Strategy Pattern
 
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.logging.*;
 
 public class TravelBookingSystem {
@@ -10,7 +49,6 @@ public class TravelBookingSystem {
     public static void main(String[] args) {
         configureLogging();
 
-        Scanner scanner = new Scanner(System.in);
         TravelContext context = new TravelContext();
 
         Map<String, TravelStrategy> strategies = new HashMap<>();
@@ -18,7 +56,39 @@ public class TravelBookingSystem {
         strategies.put("Train", new TrainStrategy());
         strategies.put("Flight", new FlightStrategy());
 
+        Map<String, String> options = parseOptions(args);
+        if (options.containsKey("--journal") && !openJournal(context, strategies, Paths.get(options.get("--journal")))) {
+            return;
+        }
+
+        BookingMetrics metrics = new BookingMetrics();
+        BookingWaitlist waitlist = new BookingWaitlist(context);
+        context.setMetrics(metrics);
+        context.setWaitlist(waitlist);
+        metrics.setWaitlist(waitlist);
+        if (options.containsKey("--metrics")) {
+            metrics.exportPeriodically(Paths.get(options.get("--metrics")), Long.parseLong(options.getOrDefault("--metrics-interval", "10")));
+        }
+
+        if (options.containsKey("--ingest")) {
+            runIngest(context, strategies, Paths.get(options.get("--ingest")));
+            return;
+        }
+
+        if (options.containsKey("--serve")) {
+            runServer(context, strategies, Integer.parseInt(options.get("--serve")));
+            return;
+        }
+
+        if (options.containsKey("--load")) {
+            runLoad(options);
+            return;
+        }
+
+        Scanner scanner = new Scanner(System.in);
+
         Map<String, Runnable> commandMap = new HashMap<>();
+        List<BookingWaitlist.Entry> waitlistTickets = new ArrayList<>();
 
         commandMap.put("Book", () -> {
             try {
@@ -39,7 +109,16 @@ public class TravelBookingSystem {
                 }
 
                 context.setTravelStrategy(strategy);
-                context.book(distance, numberOfMembers);
+                if (!context.book(distance, numberOfMembers) && TravelContext.isValidRequest(distance, numberOfMembers)
+                        && numberOfMembers <= strategy.getMaxSeats() && !context.isAvailable(strategy, numberOfMembers)) {
+                    System.out.print("Join the waitlist? (yes/no): ");
+                    if (scanner.nextLine().trim().equalsIgnoreCase("yes")) {
+                        BookingWaitlist.Entry entry = waitlist.enqueue(strategy, distance, numberOfMembers, 0);
+                        waitlistTickets.add(entry);
+                        System.out.println("Added to the waitlist with ticket " + entry.getTicket() + ". The Waitlist command shows its status.");
+                        entry.getBooking().thenAccept(id -> System.out.println("Waitlist ticket " + entry.getTicket() + " booked: Booking ID " + id + "."));
+                    }
+                }
             } catch (NumberFormatException e) {
                 System.out.println("Invalid input. Please enter numeric values for distance and number of members.");
                 logger.log(Level.WARNING, "Invalid numeric input", e);
@@ -51,9 +130,9 @@ public class TravelBookingSystem {
 
         commandMap.put("Cancel", () -> {
             try {
-                context.displayAllBookings();
-                System.out.print("Enter Booking ID to cancel: ");
-                int bookingId = Integer.parseInt(scanner.nextLine().trim());
+                context.displaySummary();
+                System.out.print("Enter Booking ID to cancel (DisplayAll lists them): ");
+                long bookingId = Long.parseLong(scanner.nextLine().trim());
                 context.cancel(bookingId);
             } catch (NumberFormatException e) {
                 System.out.println("Invalid input. Please enter a numeric value for Booking ID.");
@@ -64,9 +143,78 @@ public class TravelBookingSystem {
             }
         });
 
+        FareQuoter quoter = new FareQuoter(context, strategies.values());
+
+        commandMap.put("Quote", () -> {
+            try {
+                System.out.print("Enter distance (km): ");
+                int distance = Integer.parseInt(scanner.nextLine().trim());
+
+                System.out.print("Enter number of members: ");
+                int numberOfMembers = Integer.parseInt(scanner.nextLine().trim());
+
+                if (!TravelContext.isValidRequest(distance, numberOfMembers)) {
+                    System.out.println("Invalid distance or number of members.");
+                    return;
+                }
+                System.out.println("Fares from cheapest:");
+                for (FareQuote quote : quoter.quote(distance, numberOfMembers)) {
+                    System.out.println(" - " + quote);
+                }
+            } catch (NumberFormatException e) {
+                System.out.println("Invalid input. Please enter numeric values for distance and number of members.");
+                logger.log(Level.WARNING, "Invalid numeric input", e);
+            } catch (Exception e) {
+                System.out.println("An unexpected error occurred.");
+                logger.log(Level.SEVERE, "Unexpected error", e);
+            }
+        });
+
+        commandMap.put("Waitlist", () -> {
+            if (waitlistTickets.isEmpty()) {
+                System.out.println("No waitlist tickets in this session.");
+            }
+            for (BookingWaitlist.Entry entry : waitlistTickets) {
+                System.out.println(entry.describe());
+            }
+        });
+
+        commandMap.put("Withdraw", () -> {
+            try {
+                System.out.print("Enter waitlist ticket to withdraw: ");
+                long ticket = Long.parseLong(scanner.nextLine().trim());
+                if (waitlist.withdraw(ticket)) {
+                    System.out.println("Ticket " + ticket + " withdrawn.");
+                } else {
+                    System.out.println("Ticket " + ticket + " is not waiting (unknown, already booked or withdrawn).");
+                }
+            } catch (NumberFormatException e) {
+                System.out.println("Invalid input. Please enter a numeric value for the ticket.");
+                logger.log(Level.WARNING, "Invalid numeric input", e);
+            }
+        });
+
+        commandMap.put("Metrics", () -> System.out.print(metrics.snapshot()));
+
         commandMap.put("Display", context::displayBooking);
 
-        commandMap.put("DisplayAll", context::displayAllBookings);
+        commandMap.put("DisplayAll", () -> {
+            try {
+                context.displaySummary();
+                BookingQuery query = new BookingQuery().pageSize(20);
+                long cursor = context.listBookings(query, System.out);
+                while (cursor != 0) {
+                    System.out.print("Press Enter for more bookings, or type q to stop: ");
+                    if (scanner.nextLine().trim().equalsIgnoreCase("q")) {
+                        break;
+                    }
+                    cursor = context.listBookings(query.after(cursor), System.out);
+                }
+            } catch (IOException e) {
+                System.out.println("An unexpected error occurred.");
+                logger.log(Level.SEVERE, "Unexpected error", e);
+            }
+        });
 
         commandMap.put("Exit", () -> {
             System.out.println("Exiting...");
@@ -85,7 +233,7 @@ public class TravelBookingSystem {
     }
 
     private static boolean executeCommand(Scanner scanner, Map<String, Runnable> commandMap) {
-        System.out.println("Enter command (Book, Cancel, Display, DisplayAll, Exit): ");
+        System.out.println("Enter command (Book, Quote, Cancel, Waitlist, Withdraw, Display, DisplayAll, Metrics, Exit): ");
         String command = scanner.nextLine().trim();
         Runnable action = commandMap.get(command);
         if (action != null) {
@@ -98,6 +246,81 @@ public class TravelBookingSystem {
         }
     }
 
+    private static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            options.put(args[i], args[i + 1]);
+        }
+        return options;
+    }
+
+    private static boolean openJournal(TravelContext context, Map<String, TravelStrategy> strategies, Path file) {
+        try {
+            BookingJournal journal = new BookingJournal(file, strategies.values());
+            BookingJournal.RecoveryStats recovery = context.recover(journal);
+            System.out.println(recovery);
+            logger.info("Journal recovery: " + recovery);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    journal.close();
+                } catch (IOException e) {
+                    logger.log(Level.SEVERE, "Error closing booking journal", e);
+                }
+            }));
+            return true;
+        } catch (IOException e) {
+            System.out.println("Could not open booking journal: " + file);
+            logger.log(Level.SEVERE, "Error opening booking journal", e);
+            return false;
+        }
+    }
+
+    private static void runServer(TravelContext context, Map<String, TravelStrategy> strategies, int port) {
+        try {
+            BookingServer server = new BookingServer(context, strategies, port);
+            server.start();
+            System.out.println("Booking server listening on port " + port + " (" + server.getExecutorDescription() + ")");
+            logger.info("Booking server started on port " + port);
+            CountDownLatch stopped = new CountDownLatch(1);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                server.stop();
+                stopped.countDown();
+            }));
+            stopped.await();
+        } catch (IOException e) {
+            System.out.println("Could not start booking server on port " + port);
+            logger.log(Level.SEVERE, "Error starting booking server", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void runLoad(Map<String, String> options) {
+        int connections = Integer.parseInt(options.getOrDefault("--connections", "1000"));
+        int requests = Integer.parseInt(options.getOrDefault("--requests", "100000"));
+        try {
+            BookingLoadClient.Report report = new BookingLoadClient(URI.create(options.get("--load")), connections, requests).run();
+            System.out.println(report);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.log(Level.WARNING, "Load run interrupted", e);
+        }
+    }
+
+    private static void runIngest(TravelContext context, Map<String, TravelStrategy> strategies, Path file) {
+        try {
+            BookingIngest.Stats stats = new BookingIngest(context, strategies).ingest(file);
+            System.out.println(stats);
+            logger.info("Ingest finished: " + stats);
+        } catch (IOException e) {
+            System.out.println("Ingest of " + file + " failed: " + e.getMessage());
+            logger.log(Level.SEVERE, "Ingest failed", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.log(Level.WARNING, "Ingest interrupted", e);
+        }
+    }
+
     private static void configureLogging() {
         try {
             LogManager.getLogManager().readConfiguration(TravelBookingSystem.class.getResourceAsStream("/logging.properties"));
@@ -108,232 +331,2585 @@ public class TravelBookingSystem {
 }
 
 interface TravelStrategy {
-    void bookTicket(int distance, int numberOfMembers);
-    void cancelTicket();
-    String getBookingDetails();
     String getBookingType();
+    int getMaxSeats();
     double calculateAmount(int distance, int numberOfMembers);
-    boolean isAvailable(int numberOfMembers);
+    boolean isAvailable(SeatInventory seats, int numberOfMembers);
+    String getBookingDetails(int distance, int numberOfMembers);
+
+    default void quoteAll(int[] distances, int[] members, double[] amounts, int count) {
+        for (int i = 0; i < count; i++) {
+            amounts[i] = calculateAmount(distances[i], members[i]);
+        }
+    }
 }
 
-class BusStrategy implements TravelStrategy {
-    private boolean booked = false;
-    private int distance;
-    private int numberOfMembers;
-    private static final double PRICE_PER_KM = 5.0;
-    private static final int MAX_SEATS = 60;
-    private int availableSeats = MAX_SEATS;
+// Fare rules (distance bands, group discounts, per-member surcharge) compiled into primitive lookup tables
+class FareTable {
+    private final double[] costByKm;
+    private final double[] factorByMembers;
+    private final double lastRate;
+    private final double surchargePerMember;
 
-    public void bookTicket(int distance, int numberOfMembers) {
-        if (isAvailable(numberOfMembers)) {
-            this.distance = distance;
-            this.numberOfMembers = numberOfMembers;
-            booked = true;
-            availableSeats -= numberOfMembers;
-            System.out.println("Booked a bus ticket for distance: " + distance + " km, for " + numberOfMembers + " members.");
-        } else {
-            System.out.println("No seats available on the bus.");
+    private FareTable(double[] costByKm, double[] factorByMembers, double lastRate, double surchargePerMember) {
+        this.costByKm = costByKm;
+        this.factorByMembers = factorByMembers;
+        this.lastRate = lastRate;
+        this.surchargePerMember = surchargePerMember;
+    }
+
+    public static FareTable flat(double pricePerKm) {
+        return builder(pricePerKm).build();
+    }
+
+    public static Builder builder(double pricePerKm) {
+        return new Builder(pricePerKm);
+    }
+
+    public static class Builder {
+        private final TreeMap<Integer, Double> ratesFromKm = new TreeMap<>();
+        private final TreeMap<Integer, Double> discountsFromMembers = new TreeMap<>();
+        private double surchargePerMember;
+        private int tableDistance = 5000;
+        private int tableMembers = 64;
+
+        private Builder(double pricePerKm) {
+            ratesFromKm.put(0, pricePerKm);
+        }
+
+        // Price per km charged for every km beyond fromKm, until the next band starts
+        public Builder distanceBand(int fromKm, double pricePerKm) {
+            ratesFromKm.put(fromKm, pricePerKm);
+            return this;
+        }
+
+        // Fraction taken off the whole fare for groups of at least minMembers
+        public Builder groupDiscount(int minMembers, double discount) {
+            discountsFromMembers.put(minMembers, discount);
+            return this;
+        }
+
+        public Builder surchargePerMember(double surcharge) {
+            this.surchargePerMember = surcharge;
+            return this;
+        }
+
+        public Builder tableSize(int maxDistance, int maxMembers) {
+            this.tableDistance = maxDistance;
+            this.tableMembers = maxMembers;
+            return this;
+        }
+
+        public FareTable build() {
+            double[] costByKm = new double[tableDistance + 1];
+            double bandBase = 0;
+            int bandStart = 0;
+            double rate = ratesFromKm.get(0);
+            for (int km = 0; km <= tableDistance; km++) {
+                Double nextRate = ratesFromKm.get(km);
+                if (nextRate != null && km > 0) {
+                    bandBase += rate * (km - bandStart);
+                    bandStart = km;
+                    rate = nextRate;
+                }
+                costByKm[km] = bandBase + rate * (km - bandStart);
+            }
+
+            double[] factorByMembers = new double[tableMembers + 1];
+            for (int members = 0; members <= tableMembers; members++) {
+                Map.Entry<Integer, Double> discount = discountsFromMembers.floorEntry(members);
+                factorByMembers[members] = members * (discount != null ? 1.0 - discount.getValue() : 1.0);
+            }
+            return new FareTable(costByKm, factorByMembers, rate, surchargePerMember);
         }
     }
 
-    public void cancelTicket() {
-        if (booked) {
-            booked = false;
-            availableSeats += numberOfMembers;
-            System.out.println("Bus booking canceled.");
+    public double quote(int distance, int members) {
+        return (perMemberCost(distance) + surchargePerMember) * memberFactor(members);
+    }
+
+    // Bulk quoting. The input ranges are checked once for the whole call, so the pricing loop is two table lookups
+    // per row with no branches. Only a call with a row outside the tables falls back to quoting row by row, which
+    // also rejects negative input.
+    public void quoteAll(int[] distances, int[] members, double[] amounts, int count) {
+        double[] costs = costByKm;
+        double[] factors = factorByMembers;
+        double surcharge = surchargePerMember;
+        if (!withinTables(distances, members, count)) {
+            for (int i = 0; i < count; i++) {
+                amounts[i] = quote(distances[i], members[i]);
+            }
         } else {
-            System.out.println("No bus booking to cancel.");
+            for (int i = 0; i < count; i++) {
+                amounts[i] = (costs[distances[i]] + surcharge) * factors[members[i]];
+            }
+        }
+    }
+
+    // A value below 0 or above its table's last index makes one of the ORed terms negative
+    private boolean withinTables(int[] distances, int[] members, int count) {
+        int maxDistance = costByKm.length - 1;
+        int maxMembers = factorByMembers.length - 1;
+        int outside = 0;
+        for (int i = 0; i < count; i++) {
+            outside |= distances[i] | (maxDistance - distances[i]) | members[i] | (maxMembers - members[i]);
+        }
+        return outside >= 0;
+    }
+
+    private double perMemberCost(int distance) {
+        if (distance < 0) {
+            throw new IllegalArgumentException("Distance must not be negative: " + distance);
         }
+        int maxDistance = costByKm.length - 1;
+        return distance <= maxDistance ? costByKm[distance] : costByKm[maxDistance] + lastRate * (distance - maxDistance);
     }
 
-    public String getBookingDetails() {
-        return booked ? "Bus ticket booked for distance: " + distance + " km, for " + numberOfMembers + " members." : "No bus booking.";
+    private double memberFactor(int members) {
+        if (members < 0) {
+            throw new IllegalArgumentException("Number of members must not be negative: " + members);
+        }
+        int maxMembers = factorByMembers.length - 1;
+        return members <= maxMembers ? factorByMembers[members] : factorByMembers[maxMembers] / maxMembers * members;
     }
+}
+
+class BusStrategy implements TravelStrategy {
+    private static final double PRICE_PER_KM = 5.0;
+    private static final int MAX_SEATS = 60;
+    private static final FareTable FARES = FareTable.flat(PRICE_PER_KM);
 
     public String getBookingType() {
         return "Bus";
     }
 
+    public int getMaxSeats() {
+        return MAX_SEATS;
+    }
+
     public double calculateAmount(int distance, int numberOfMembers) {
-        return PRICE_PER_KM * distance * numberOfMembers;
+        return FARES.quote(distance, numberOfMembers);
+    }
+
+    public void quoteAll(int[] distances, int[] members, double[] amounts, int count) {
+        FARES.quoteAll(distances, members, amounts, count);
     }
 
-    public boolean isAvailable(int numberOfMembers) {
-        return availableSeats >= numberOfMembers;
+    public boolean isAvailable(SeatInventory seats, int numberOfMembers) {
+        return numberOfMembers > 0 && seats.available() >= numberOfMembers;
+    }
+
+    public String getBookingDetails(int distance, int numberOfMembers) {
+        return "Bus ticket booked for distance: " + distance + " km, for " + numberOfMembers + " members.";
     }
 }
 
 class TrainStrategy implements TravelStrategy {
-    private boolean booked = false;
-    private int distance;
-    private int numberOfMembers;
     private static final double PRICE_PER_KM = 10.0;
     private static final int MAX_SEATS = 1000;
-    private int availableSeats = MAX_SEATS;
+    private static final FareTable FARES = FareTable.flat(PRICE_PER_KM);
 
-    public void bookTicket(int distance, int numberOfMembers) {
-        if (isAvailable(numberOfMembers)) {
-            this.distance = distance;
-            this.numberOfMembers = numberOfMembers;
-            booked = true;
-            availableSeats -= numberOfMembers;
-            System.out.println("Booked a train ticket for distance: " + distance + " km, for " + numberOfMembers + " members.");
-        } else {
-            System.out.println("No seats available on the train.");
-        }
+    public String getBookingType() {
+        return "Train";
     }
 
-    public void cancelTicket() {
-        if (booked) {
-            booked = false;
-            availableSeats += numberOfMembers;
-            System.out.println("Train booking canceled.");
-        } else {
-            System.out.println("No train booking to cancel.");
-        }
+    public int getMaxSeats() {
+        return MAX_SEATS;
     }
 
-    public String getBookingDetails() {
-        return booked ? "Train ticket booked for distance: " + distance + " km, for " + numberOfMembers + " members." : "No train booking.";
+    public double calculateAmount(int distance, int numberOfMembers) {
+        return FARES.quote(distance, numberOfMembers);
     }
 
-    public String getBookingType() {
-        return "Train";
+    public void quoteAll(int[] distances, int[] members, double[] amounts, int count) {
+        FARES.quoteAll(distances, members, amounts, count);
     }
 
-    public double calculateAmount(int distance, int numberOfMembers) {
-        return PRICE_PER_KM * distance * numberOfMembers;
+    public boolean isAvailable(SeatInventory seats, int numberOfMembers) {
+        return numberOfMembers > 0 && seats.available() >= numberOfMembers;
     }
 
-    public boolean isAvailable(int numberOfMembers) {
-        return availableSeats >= numberOfMembers;
+    public String getBookingDetails(int distance, int numberOfMembers) {
+        return "Train ticket booked for distance: " + distance + " km, for " + numberOfMembers + " members.";
     }
 }
 
 class FlightStrategy implements TravelStrategy {
-    private boolean booked = false;
-    private int distance;
-    private int numberOfMembers;
     private static final double PRICE_PER_KM = 20.0;
     private static final int MAX_SEATS = 50;
-    private int availableSeats = MAX_SEATS;
+    private static final FareTable FARES = FareTable.flat(PRICE_PER_KM);
 
-    public void bookTicket(int distance, int numberOfMembers) {
-        if (isAvailable(numberOfMembers)) {
-            this.distance = distance;
-            this.numberOfMembers = numberOfMembers;
-            booked = true;
-            availableSeats -= numberOfMembers;
-            System.out.println("Booked a flight ticket for distance: " + distance + " km, for " + numberOfMembers + " members.");
-        } else {
-            System.out.println("No seats available on the flight.");
-        }
+    public String getBookingType() {
+        return "Flight";
     }
 
-    public void cancelTicket() {
-        if (booked) {
-            booked = false;
-            availableSeats += numberOfMembers;
-            System.out.println("Flight booking canceled.");
-        } else {
-            System.out.println("No flight booking to cancel.");
-        }
+    public int getMaxSeats() {
+        return MAX_SEATS;
     }
 
-    public String getBookingDetails() {
-        return booked ? "Flight ticket booked for distance: " + distance + " km, for " + numberOfMembers + " members." : "No flight booking.";
+    public double calculateAmount(int distance, int numberOfMembers) {
+        return FARES.quote(distance, numberOfMembers);
     }
 
-    public String getBookingType() {
-        return "Flight";
+    public void quoteAll(int[] distances, int[] members, double[] amounts, int count) {
+        FARES.quoteAll(distances, members, amounts, count);
     }
 
-    public double calculateAmount(int distance, int numberOfMembers) {
-        return PRICE_PER_KM * distance * numberOfMembers;
+    public boolean isAvailable(SeatInventory seats, int numberOfMembers) {
+        return numberOfMembers > 0 && seats.available() >= numberOfMembers;
     }
 
-    public boolean isAvailable(int numberOfMembers) {
-        return availableSeats >= numberOfMembers;
+    public String getBookingDetails(int distance, int numberOfMembers) {
+        return "Flight ticket booked for distance: " + distance + " km, for " + numberOfMembers + " members.";
     }
 }
 
-class TravelContext {
-    private TravelStrategy strategy;
-    private List<Booking> bookings = new ArrayList<>();
-    private int bookingIdCounter = 1;
+// Lock-free seat counter shared by all booking threads of one transport mode
+class SeatInventory {
+    private final int capacity;
+    private final AtomicInteger availableSeats;
 
-    private class Booking {
-        int id;
-        TravelStrategy strategy;
-        int distance;
-        int numberOfMembers;
-        double amount;
+    public SeatInventory(int capacity) {
+        this.capacity = capacity;
+        this.availableSeats = new AtomicInteger(capacity);
+    }
 
-        Booking(int id, TravelStrategy strategy, int distance, int numberOfMembers, double amount) {
-            this.id = id;
-            this.strategy = strategy;
-            this.distance = distance;
-            this.numberOfMembers = numberOfMembers;
-            this.amount = amount;
+    public boolean tryReserve(int seats) {
+        if (seats <= 0) {
+            return false;
+        }
+        while (true) {
+            int current = availableSeats.get();
+            if (current < seats) {
+                return false;
+            }
+            if (availableSeats.compareAndSet(current, current - seats)) {
+                return true;
+            }
         }
+    }
 
-        @Override
-        public String toString() {
-            return "Booking ID: " + id + ", " + strategy.getBookingType() + " ticket for distance: " + distance + " km, for " + numberOfMembers + " members. Total Amount: $" + amount;
+    // Takes as many of the requested seats as are left, in a single atomic step
+    public int reserveUpTo(int seats) {
+        if (seats <= 0) {
+            return 0;
+        }
+        while (true) {
+            int current = availableSeats.get();
+            int granted = Math.min(current, seats);
+            if (granted == 0 || availableSeats.compareAndSet(current, current - granted)) {
+                return granted;
+            }
         }
     }
 
-    public void setTravelStrategy(TravelStrategy strategy) {
-        this.strategy = strategy;
+    public void release(int seats) {
+        while (true) {
+            int current = availableSeats.get();
+            int next = Math.min(capacity, current + seats);
+            if (availableSeats.compareAndSet(current, next)) {
+                return;
+            }
+        }
     }
 
-    public void book(int distance, int numberOfMembers) {
-        if (strategy != null) {
-            if (strategy.isAvailable(numberOfMembers)) {
-                strategy.bookTicket(distance, numberOfMembers);
-                double amount = strategy.calculateAmount(distance, numberOfMembers);
-                bookings.add(new Booking(bookingIdCounter++, strategy, distance, numberOfMembers, amount));
-                System.out.println("Cost of traveling: $" + amount);
-            } else {
-                System.out.println("No seats available.");
+    public int available() {
+        return availableSeats.get();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+}
+
+// Open-addressing map keyed by positive primitive longs, iterated in insertion order
+class LongKeyMap<V> {
+    private static final long FREE = 0L;
+    private static final long DELETED = -1L;
+    private static final int NONE = -1;
+    private static final int SUCCESSOR_PROBES = 64;
+
+    private long[] keys;
+    private Object[] values;
+    private int[] before;
+    private int[] after;
+    private int head = NONE;
+    private int tail = NONE;
+    private int size;
+    private int used;
+    private int mask;
+
+    public LongKeyMap() {
+        this(16);
+    }
+
+    public LongKeyMap(int expectedSize) {
+        allocate(tableSizeFor(expectedSize));
+    }
+
+    private static int tableSizeFor(int expectedSize) {
+        int capacity = 16;
+        while (capacity < expectedSize * 2) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new Object[capacity];
+        before = new int[capacity];
+        after = new int[capacity];
+        mask = capacity - 1;
+        head = NONE;
+        tail = NONE;
+        size = 0;
+        used = 0;
+    }
+
+    private int slotOf(long key) {
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+    }
+
+    // Keys of 0 and below are never stored (0 and -1 mark free and deleted slots), so they are never found
+    private int find(long key) {
+        if (key <= 0) {
+            return NONE;
+        }
+        int slot = slotOf(key);
+        while (true) {
+            long current = keys[slot];
+            if (current == key) {
+                return slot;
             }
-        } else {
-            System.out.println("No strategy set.");
+            if (current == FREE) {
+                return NONE;
+            }
+            slot = (slot + 1) & mask;
         }
     }
 
-    public void cancel(int bookingId) {
-        Optional<Booking> bookingToCancel = bookings.stream()
-                .filter(booking -> booking.id == bookingId)
-                .findFirst();
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        int slot = find(key);
+        return slot == NONE ? null : (V) values[slot];
+    }
+
+    public boolean containsKey(long key) {
+        return find(key) != NONE;
+    }
 
-        if (bookingToCancel.isPresent()) {
-            TravelStrategy strategy = bookingToCancel.get().strategy;
-            strategy.cancelTicket();
-            bookings.removeIf(booking -> booking.id == bookingId);
+    public void put(long key, V value) {
+        if (key <= 0) {
+            throw new IllegalArgumentException("Keys must be positive: " + key);
+        }
+        int existing = find(key);
+        if (existing != NONE) {
+            values[existing] = value;
+            return;
+        }
+        if ((used + 1) * 2 > keys.length) {
+            rehash(size + 1 > keys.length / 4 ? keys.length << 1 : keys.length);
+        }
+        int slot = slotOf(key);
+        while (keys[slot] != FREE && keys[slot] != DELETED) {
+            slot = (slot + 1) & mask;
+        }
+        if (keys[slot] == FREE) {
+            used++;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        before[slot] = tail;
+        after[slot] = NONE;
+        if (tail == NONE) {
+            head = slot;
         } else {
-            System.out.println("Booking ID not found.");
+            after[tail] = slot;
         }
+        tail = slot;
+        size++;
     }
 
-    public void displayBooking() {
-        if (strategy != null) {
-            System.out.println(strategy.getBookingDetails());
+    @SuppressWarnings("unchecked")
+    public V remove(long key) {
+        int slot = find(key);
+        if (slot == NONE) {
+            return null;
+        }
+        V value = (V) values[slot];
+        int previous = before[slot];
+        int next = after[slot];
+        if (previous == NONE) {
+            head = next;
         } else {
-            System.out.println("No strategy set.");
+            after[previous] = next;
+        }
+        if (next == NONE) {
+            tail = previous;
+        } else {
+            before[next] = previous;
         }
+        keys[slot] = DELETED;
+        values[slot] = null;
+        size--;
+        return value;
     }
 
-    public void displayAllBookings() {
-        if (bookings.isEmpty()) {
-            System.out.println("No previous bookings.");
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        int[] oldAfter = after;
+        int slot = head;
+        allocate(capacity);
+        while (slot != NONE) {
+            @SuppressWarnings("unchecked")
+            V value = (V) oldValues[slot];
+            put(oldKeys[slot], value);
+            slot = oldAfter[slot];
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    public void forEach(java.util.function.Consumer<? super V> action) {
+        for (int slot = head; slot != NONE; slot = after[slot]) {
+            action.accept((V) values[slot]);
+        }
+    }
+
+    // Visits entries inserted after afterKey (all entries for 0) until the action returns false.
+    // Assumes keys are inserted in ascending order. If afterKey has been removed, the next few higher keys are
+    // probed directly; only when none of those is present does it fall back to an O(size) walk from the head.
+    @SuppressWarnings("unchecked")
+    public void forEachAfter(long afterKey, java.util.function.Predicate<? super V> action) {
+        int slot;
+        if (afterKey <= 0) {
+            slot = head;
         } else {
-            System.out.println("Previous bookings:");
-            for (Booking booking : bookings) {
-                System.out.println(booking);
+            int found = find(afterKey);
+            if (found != NONE) {
+                slot = after[found];
+            } else {
+                slot = NONE;
+                for (long next = afterKey + 1; next <= afterKey + SUCCESSOR_PROBES && slot == NONE; next++) {
+                    slot = find(next);
+                }
+                if (slot == NONE) {
+                    slot = head;
+                    while (slot != NONE && keys[slot] <= afterKey) {
+                        slot = after[slot];
+                    }
+                }
+            }
+        }
+        for (; slot != NONE; slot = after[slot]) {
+            if (!action.test((V) values[slot])) {
+                return;
             }
         }
     }
 }
 
+// Cursor-based filter for TravelContext.listBookings; afterId 0 starts at the oldest live booking
+class BookingQuery {
+    long afterId;
+    static final int MAX_PAGE_SIZE = 1000;
+
+    int pageSize = 20;
+    String mode;
+    double minAmount = Double.NEGATIVE_INFINITY;
+    double maxAmount = Double.POSITIVE_INFINITY;
+
+    public BookingQuery after(long bookingId) {
+        this.afterId = bookingId;
+        return this;
+    }
+
+    // Pages are formatted under the booking lock, so their size is bounded: below 1 is rejected, above the cap is clamped
+    public BookingQuery pageSize(int pageSize) {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("Page size must be at least 1: " + pageSize);
+        }
+        this.pageSize = Math.min(pageSize, MAX_PAGE_SIZE);
+        return this;
+    }
+
+    public BookingQuery mode(String mode) {
+        this.mode = mode;
+        return this;
+    }
+
+    public BookingQuery amountBetween(double minAmount, double maxAmount) {
+        this.minAmount = minAmount;
+        this.maxAmount = maxAmount;
+        return this;
+    }
+}
+
+// Live booking count and revenue for one mode, kept up to date on every book and cancel
+class BookingTotals {
+    private final LongAdder count = new LongAdder();
+    private final DoubleAdder revenue = new DoubleAdder();
+
+    void add(double amount) {
+        count.increment();
+        revenue.add(amount);
+    }
+
+    void remove(double amount) {
+        count.decrement();
+        revenue.add(-amount);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public double getRevenue() {
+        return revenue.sum();
+    }
+}
+
+// Per-row outcome of TravelContext.bookBatch; a booking id of 0 marks a rejected row
+class BatchBookingResult {
+    private final long[] bookingIds;
+    private final double[] amounts;
+    private int acceptedCount;
+    private RuntimeException failure;
+
+    BatchBookingResult(int rows) {
+        this.bookingIds = new long[rows];
+        this.amounts = new double[rows];
+    }
 
+    void accept(int row, long bookingId, double amount) {
+        bookingIds[row] = bookingId;
+        amounts[row] = amount;
+        acceptedCount++;
+    }
+
+    public boolean isAccepted(int row) {
+        return bookingIds[row] != 0;
+    }
+
+    public long getBookingId(int row) {
+        return bookingIds[row];
+    }
+
+    public double getAmount(int row) {
+        return amounts[row];
+    }
+
+    public int size() {
+        return bookingIds.length;
+    }
+
+    public int getAcceptedCount() {
+        return acceptedCount;
+    }
+
+    public int getRejectedCount() {
+        return bookingIds.length - acceptedCount;
+    }
+
+    void fail(RuntimeException failure) {
+        this.failure = failure;
+    }
+
+    // Set when the journal refused a row; that row and every later one were rejected and hold no seats
+    public RuntimeException getFailure() {
+        return failure;
+    }
+}
+
+class TravelContext {
+    private volatile TravelStrategy strategy;
+    private final Object bookingLock = new Object();
+    private final LongKeyMap<Booking> bookings = new LongKeyMap<>();
+    private final Map<String, LongKeyMap<Booking>> bookingsByMode = new HashMap<>();
+    private final Map<String, SeatInventory> inventories = new ConcurrentHashMap<>();
+    private final Map<String, Booking> lastBookingByMode = new ConcurrentHashMap<>();
+    private final TripInventory trips = new TripInventory();
+    private final Map<String, BookingTotals> totalsByMode = new ConcurrentHashMap<>();
+    private static final ThreadLocal<StringBuilder> LINE_BUFFER = ThreadLocal.withInitial(() -> new StringBuilder(256));
+    private long bookingIdCounter = 1;
+    private BookingJournal journal;
+    private volatile BookingMetrics metrics;
+    private volatile BookingWaitlist waitlist;
+
+    // Each booking owns its reservation, so cancelling releases exactly the seats it took
+    private class Booking {
+        long id;
+        TravelStrategy strategy;
+        SeatInventory seats;
+        SeatMap seatMap;
+        long departureId;
+        int firstSeat = -1;
+        int distance;
+        int numberOfMembers;
+        double amount;
+
+        Booking(long id, TravelStrategy strategy, SeatInventory seats, int distance, int numberOfMembers, double amount) {
+            this.id = id;
+            this.strategy = strategy;
+            this.seats = seats;
+            this.distance = distance;
+            this.numberOfMembers = numberOfMembers;
+            this.amount = amount;
+        }
+
+        Booking(long id, TravelStrategy strategy, SeatMap seatMap, long departureId, int firstSeat, int distance, int numberOfMembers, double amount) {
+            this(id, strategy, (SeatInventory) null, distance, numberOfMembers, amount);
+            this.seatMap = seatMap;
+            this.departureId = departureId;
+            this.firstSeat = firstSeat;
+        }
+
+        void releaseSeats() {
+            if (seatMap != null) {
+                seatMap.release(firstSeat, numberOfMembers);
+            } else {
+                seats.release(numberOfMembers);
+            }
+        }
+
+        void appendTo(StringBuilder out) {
+            out.append("Booking ID: ").append(id).append(", ").append(strategy.getBookingType()).append(" ticket");
+            if (seatMap != null) {
+                out.append(" on departure ").append(departureId)
+                        .append(", seats ").append(firstSeat + 1).append('-').append(firstSeat + numberOfMembers);
+            }
+            out.append(" for distance: ").append(distance).append(" km, for ").append(numberOfMembers)
+                    .append(" members. Total Amount: $").append(amount);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder out = new StringBuilder(128);
+            appendTo(out);
+            return out.toString();
+        }
+    }
+
+    public void setTravelStrategy(TravelStrategy strategy) {
+        this.strategy = strategy;
+    }
+
+    public boolean book(int distance, int numberOfMembers) {
+        return book(strategy, distance, numberOfMembers);
+    }
+
+    // Checked before any seat is reserved, so a request that cannot be priced never holds seats
+    static boolean isValidRequest(int distance, int numberOfMembers) {
+        return distance >= 0 && numberOfMembers > 0;
+    }
+
+    // Thread-safe entry point: the strategy is passed per call instead of read from shared context state
+    public boolean book(TravelStrategy strategy, int distance, int numberOfMembers) {
+        if (strategy == null) {
+            System.out.println("No strategy set.");
+            return false;
+        }
+        if (!isValidRequest(distance, numberOfMembers)) {
+            System.out.println("Invalid distance or number of members.");
+            return false;
+        }
+        long id;
+        try {
+            id = tryBook(strategy, distance, numberOfMembers);
+        } catch (BookingJournal.JournalException e) {
+            System.out.println("Booking could not be recorded: " + e.getMessage() + ".");
+            return false;
+        }
+        if (id == 0) {
+            System.out.println("No seats available on the " + strategy.getBookingType().toLowerCase() + ".");
+            return false;
+        }
+        System.out.println("Booked: " + strategy.getBookingDetails(distance, numberOfMembers));
+        System.out.println("Booking ID: " + id + ". Cost of traveling: $" + findAmount(id));
+        return true;
+    }
+
+    // Silent variant for non-interactive callers: returns the booking id, or 0 when no seats are left or the input is invalid.
+    // The fare is computed before seats are reserved, so a pricing failure cannot leak a reservation.
+    // While parties are on the mode's waitlist, new callers get 0: freed seats are kept for the waitlist.
+    public long tryBook(TravelStrategy strategy, int distance, int numberOfMembers) {
+        return tryBook(strategy, distance, numberOfMembers, false);
+    }
+
+    // Used by the waitlist promoter, which books on behalf of the party at the head of the queue
+    long tryBookFromWaitlist(TravelStrategy strategy, int distance, int numberOfMembers) {
+        return tryBook(strategy, distance, numberOfMembers, true);
+    }
+
+    private long tryBook(TravelStrategy strategy, int distance, int numberOfMembers, boolean fromWaitlist) {
+        BookingMetrics metrics = this.metrics;
+        long start = metrics != null ? System.nanoTime() : 0;
+        long id = 0;
+        double amount = 0;
+        if (isValidRequest(distance, numberOfMembers) && (fromWaitlist || !partiesWaiting(strategy))) {
+            amount = strategy.calculateAmount(distance, numberOfMembers);
+            SeatInventory seats = seatsFor(strategy);
+            if (strategy.isAvailable(seats, numberOfMembers) && seats.tryReserve(numberOfMembers)) {
+                id = addBooking(strategy, seats, distance, numberOfMembers, amount);
+            }
+        }
+        if (metrics != null) {
+            metrics.recordBooking(strategy.getBookingType(), id != 0, amount, System.nanoTime() - start);
+        }
+        return id;
+    }
+
+    // Books a group onto one scheduled departure, seated together
+    public boolean book(TravelStrategy strategy, long departureId, int distance, int numberOfMembers) {
+        if (strategy == null) {
+            System.out.println("No strategy set.");
+            return false;
+        }
+        if (departureId <= 0 || !isValidRequest(distance, numberOfMembers)) {
+            System.out.println("Invalid departure, distance or number of members.");
+            return false;
+        }
+        long id;
+        try {
+            id = tryBook(strategy, departureId, distance, numberOfMembers);
+        } catch (BookingJournal.JournalException e) {
+            System.out.println("Booking could not be recorded: " + e.getMessage() + ".");
+            return false;
+        }
+        if (id == 0) {
+            System.out.println("No " + numberOfMembers + " adjacent seats available on " + strategy.getBookingType().toLowerCase() + " departure " + departureId + ".");
+            return false;
+        }
+        System.out.println("Booked: " + findBooking(id));
+        return true;
+    }
+
+    public long tryBook(TravelStrategy strategy, long departureId, int distance, int numberOfMembers) {
+        if (departureId <= 0 || !isValidRequest(distance, numberOfMembers)) {
+            return 0;
+        }
+        BookingMetrics metrics = this.metrics;
+        long start = metrics != null ? System.nanoTime() : 0;
+        double amount = strategy.calculateAmount(distance, numberOfMembers);
+        SeatMap seatMap = trips.seatMap(strategy, departureId);
+        int firstSeat = seatMap.allocateContiguous(numberOfMembers);
+        if (firstSeat < 0) {
+            if (metrics != null) {
+                metrics.recordBooking(strategy.getBookingType(), false, 0, System.nanoTime() - start);
+            }
+            return 0;
+        }
+        Booking booking;
+        try {
+            synchronized (bookingLock) {
+                booking = new Booking(bookingIdCounter, strategy, seatMap, departureId, firstSeat, distance, numberOfMembers, amount);
+                indexBooking(booking);
+                bookingIdCounter++;
+            }
+        } catch (RuntimeException e) {
+            seatMap.release(firstSeat, numberOfMembers);
+            throw e;
+        }
+        lastBookingByMode.put(strategy.getBookingType(), booking);
+        if (metrics != null) {
+            metrics.recordBooking(strategy.getBookingType(), true, amount, System.nanoTime() - start);
+        }
+        return booking.id;
+    }
+
+    public int availableSeats(TravelStrategy strategy, long departureId) {
+        return trips.available(strategy, departureId);
+    }
+
+    // A booking the journal refuses gives its seats back, so the exception leaves no trace behind
+    private long addBooking(TravelStrategy strategy, SeatInventory seats, int distance, int numberOfMembers, double amount) {
+        Booking booking;
+        try {
+            synchronized (bookingLock) {
+                booking = new Booking(bookingIdCounter, strategy, seats, distance, numberOfMembers, amount);
+                indexBooking(booking);
+                bookingIdCounter++;
+            }
+        } catch (RuntimeException e) {
+            seats.release(numberOfMembers);
+            throw e;
+        }
+        lastBookingByMode.put(strategy.getBookingType(), booking);
+        return booking.id;
+    }
+
+    // Books many rows at once: one seat reservation per transport mode, one index update for the whole batch
+    public BatchBookingResult bookBatch(TravelStrategy[] modes, int[] distances, int[] members) {
+        return bookBatch(modes, distances, members, modes.length);
+    }
+
+    // Invalid rows are rejected on their own; every fare is computed before any seat is reserved
+    public BatchBookingResult bookBatch(TravelStrategy[] modes, int[] distances, int[] members, int rows) {
+        BatchBookingResult result = new BatchBookingResult(rows);
+        boolean[] accepted = new boolean[rows];
+        double[] amounts = new double[rows];
+        boolean[] valid = new boolean[rows];
+        boolean[] grouped = new boolean[rows];
+
+        for (int row = 0; row < rows; row++) {
+            if (modes[row] != null && isValidRequest(distances[row], members[row]) && !partiesWaiting(modes[row])) {
+                amounts[row] = modes[row].calculateAmount(distances[row], members[row]);
+                valid[row] = true;
+            }
+        }
+
+        for (int first = 0; first < rows; first++) {
+            TravelStrategy strategy = modes[first];
+            if (grouped[first] || !valid[first]) {
+                continue;
+            }
+            int requested = 0;
+            for (int row = first; row < rows; row++) {
+                if (modes[row] == strategy && valid[row]) {
+                    grouped[row] = true;
+                    requested += members[row];
+                }
+            }
+
+            SeatInventory seats = seatsFor(strategy);
+            int remaining = seats.reserveUpTo(requested);
+            for (int row = first; row < rows && remaining > 0; row++) {
+                if (modes[row] == strategy && valid[row] && members[row] <= remaining) {
+                    remaining -= members[row];
+                    accepted[row] = true;
+                }
+            }
+            if (remaining > 0) {
+                seats.release(remaining);
+            }
+        }
+
+        Booking[] added = new Booking[rows];
+        synchronized (bookingLock) {
+            for (int row = 0; row < rows && result.getFailure() == null; row++) {
+                if (accepted[row]) {
+                    TravelStrategy strategy = modes[row];
+                    Booking booking = new Booking(bookingIdCounter, strategy, inventories.get(strategy.getBookingType()),
+                            distances[row], members[row], amounts[row]);
+                    try {
+                        indexBooking(booking);
+                    } catch (BookingJournal.JournalException e) {
+                        result.fail(e);
+                        break;
+                    }
+                    bookingIdCounter++;
+                    added[row] = booking;
+                }
+            }
+        }
+        if (result.getFailure() != null) {
+            for (int row = 0; row < rows; row++) {
+                if (accepted[row] && added[row] == null) {
+                    inventories.get(modes[row].getBookingType()).release(members[row]);
+                }
+            }
+        }
+        BookingMetrics metrics = this.metrics;
+        for (int row = 0; row < rows; row++) {
+            if (added[row] != null) {
+                result.accept(row, added[row].id, amounts[row]);
+                lastBookingByMode.put(added[row].strategy.getBookingType(), added[row]);
+            }
+            if (metrics != null && modes[row] != null) {
+                metrics.recordBatchRow(modes[row].getBookingType(), added[row] != null, amounts[row]);
+            }
+        }
+        return result;
+    }
+
+    // Callers hold bookingLock, so journal order always matches booking id order.
+    // The journal is written first: if it throws, the indexes have not changed.
+    private void indexBooking(Booking booking) {
+        if (journal != null) {
+            journal.appendBook(booking.id, booking.strategy, booking.departureId, booking.firstSeat, booking.distance, booking.numberOfMembers, booking.amount);
+        }
+        bookings.put(booking.id, booking);
+        bookingsByMode.computeIfAbsent(booking.strategy.getBookingType(), mode -> new LongKeyMap<>()).put(booking.id, booking);
+        totalsFor(booking.strategy.getBookingType()).add(booking.amount);
+    }
+
+    private Booking unindexBooking(long bookingId) {
+        Booking booking = bookings.remove(bookingId);
+        if (booking != null) {
+            bookingsByMode.get(booking.strategy.getBookingType()).remove(bookingId);
+            totalsFor(booking.strategy.getBookingType()).remove(booking.amount);
+        }
+        return booking;
+    }
+
+    private BookingTotals totalsFor(String mode) {
+        return totalsByMode.computeIfAbsent(mode, key -> new BookingTotals());
+    }
+
+    // Rebuilds bookings and seat counts from the journal, then journals every later change to it
+    public BookingJournal.RecoveryStats recover(BookingJournal journal) {
+        synchronized (bookingLock) {
+            BookingJournal.RecoveryStats stats = journal.replay(new BookingJournal.ReplayHandler() {
+                @Override
+                public void onBook(long bookingId, TravelStrategy strategy, long departureId, int firstSeat, int distance, int numberOfMembers, double amount) {
+                    Booking booking;
+                    if (departureId > 0) {
+                        SeatMap seatMap = trips.seatMap(strategy, departureId);
+                        seatMap.reserve(firstSeat, numberOfMembers);
+                        booking = new Booking(bookingId, strategy, seatMap, departureId, firstSeat, distance, numberOfMembers, amount);
+                    } else {
+                        SeatInventory seats = seatsFor(strategy);
+                        seats.reserveUpTo(numberOfMembers);
+                        booking = new Booking(bookingId, strategy, seats, distance, numberOfMembers, amount);
+                    }
+                    indexBooking(booking);
+                    lastBookingByMode.put(strategy.getBookingType(), booking);
+                    bookingIdCounter = Math.max(bookingIdCounter, bookingId + 1);
+                }
+
+                @Override
+                public void onCancel(long bookingId) {
+                    Booking booking = unindexBooking(bookingId);
+                    if (booking != null) {
+                        booking.releaseSeats();
+                        lastBookingByMode.remove(booking.strategy.getBookingType(), booking);
+                    }
+                }
+            });
+            this.journal = journal;
+            return stats;
+        }
+    }
+
+    private SeatInventory seatsFor(TravelStrategy strategy) {
+        return inventories.computeIfAbsent(strategy.getBookingType(), mode -> new SeatInventory(strategy.getMaxSeats()));
+    }
+
+    public int availableSeats(TravelStrategy strategy) {
+        return seatsFor(strategy).available();
+    }
+
+    // Whether a new booking for the group would succeed now; waitlisted parties come first
+    public boolean isAvailable(TravelStrategy strategy, int numberOfMembers) {
+        return hasFreeSeats(strategy, numberOfMembers) && !partiesWaiting(strategy);
+    }
+
+    boolean hasFreeSeats(TravelStrategy strategy, int numberOfMembers) {
+        return strategy.isAvailable(seatsFor(strategy), numberOfMembers);
+    }
+
+    private boolean partiesWaiting(TravelStrategy strategy) {
+        BookingWaitlist waitlist = this.waitlist;
+        return waitlist != null && waitlist.hasWaiting(strategy);
+    }
+
+    public void cancel(long bookingId) {
+        Booking bookingToCancel;
+        try {
+            bookingToCancel = removeBooking(bookingId);
+        } catch (BookingJournal.JournalException e) {
+            System.out.println("Cancellation could not be recorded: " + e.getMessage() + ".");
+            return;
+        }
+        if (bookingToCancel != null) {
+            System.out.println(bookingToCancel.strategy.getBookingType() + " booking canceled.");
+        } else {
+            System.out.println("Booking ID not found.");
+        }
+    }
+
+    public boolean tryCancel(long bookingId) {
+        return removeBooking(bookingId) != null;
+    }
+
+    private Booking removeBooking(long bookingId) {
+        BookingMetrics metrics = this.metrics;
+        long start = metrics != null ? System.nanoTime() : 0;
+        Booking bookingToCancel;
+        synchronized (bookingLock) {
+            // Journaled before the booking leaves the indexes, so a refused cancel keeps the booking intact
+            if (journal != null && bookings.get(bookingId) != null) {
+                journal.appendCancel(bookingId);
+            }
+            bookingToCancel = unindexBooking(bookingId);
+        }
+        if (bookingToCancel != null) {
+            bookingToCancel.releaseSeats();
+            lastBookingByMode.remove(bookingToCancel.strategy.getBookingType(), bookingToCancel);
+            BookingWaitlist waitlist = this.waitlist;
+            if (waitlist != null && bookingToCancel.seatMap == null) {
+                waitlist.seatsReleased(bookingToCancel.strategy);
+            }
+        }
+        if (metrics != null) {
+            metrics.recordCancel(bookingToCancel != null, System.nanoTime() - start);
+        }
+        return bookingToCancel;
+    }
+
+    public String findBooking(long bookingId) {
+        synchronized (bookingLock) {
+            Booking booking = bookings.get(bookingId);
+            return booking != null ? booking.toString() : null;
+        }
+    }
+
+    private double findAmount(long bookingId) {
+        synchronized (bookingLock) {
+            Booking booking = bookings.get(bookingId);
+            return booking != null ? booking.amount : 0;
+        }
+    }
+
+    // Writes one page of matching bookings to the sink and returns the cursor for the next page, or 0 at the end.
+    // The page is formatted under the lock into a reused buffer; the sink is written outside the lock.
+    // Resuming from a cursor is O(1) unless that booking and the ids just above it were cancelled, see forEachAfter.
+    public long listBookings(BookingQuery query, Appendable sink) throws IOException {
+        StringBuilder page = LINE_BUFFER.get();
+        page.setLength(0);
+        int pageSize = Math.max(1, Math.min(query.pageSize, BookingQuery.MAX_PAGE_SIZE));
+        long[] cursor = new long[2];
+        synchronized (bookingLock) {
+            LongKeyMap<Booking> source = query.mode == null ? bookings : bookingsByMode.get(query.mode);
+            if (source != null) {
+                source.forEachAfter(query.afterId, booking -> {
+                    cursor[0] = booking.id;
+                    if (booking.amount >= query.minAmount && booking.amount <= query.maxAmount) {
+                        booking.appendTo(page);
+                        page.append('\n');
+                        if (++cursor[1] == pageSize) {
+                            return false;
+                        }
+                    }
+                    return true;
+                });
+            }
+        }
+        sink.append(page);
+        if (page.capacity() > 1 << 20) {
+            LINE_BUFFER.remove();
+        }
+        return cursor[1] == pageSize ? cursor[0] : 0;
+    }
+
+    public void setWaitlist(BookingWaitlist waitlist) {
+        this.waitlist = waitlist;
+    }
+
+    public BookingWaitlist getWaitlist() {
+        return waitlist;
+    }
+
+    public void setMetrics(BookingMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public BookingMetrics getMetrics() {
+        return metrics;
+    }
+
+    public Map<String, BookingTotals> getTotals() {
+        return Collections.unmodifiableMap(totalsByMode);
+    }
+
+    public void displaySummary() {
+        if (totalsByMode.isEmpty()) {
+            System.out.println("No previous bookings.");
+            return;
+        }
+        for (Map.Entry<String, BookingTotals> entry : new TreeMap<>(totalsByMode).entrySet()) {
+            System.out.println(entry.getKey() + ": " + entry.getValue().getCount() + " bookings, revenue $" + entry.getValue().getRevenue());
+        }
+    }
+
+    public int countBookings(String mode) {
+        synchronized (bookingLock) {
+            LongKeyMap<Booking> modeBookings = mode == null ? bookings : bookingsByMode.get(mode);
+            return modeBookings != null ? modeBookings.size() : 0;
+        }
+    }
+
+    public void displayBooking() {
+        TravelStrategy strategy = this.strategy;
+        if (strategy != null) {
+            Booking booking = lastBookingByMode.get(strategy.getBookingType());
+            System.out.println(booking != null
+                    ? strategy.getBookingDetails(booking.distance, booking.numberOfMembers)
+                    : "No " + strategy.getBookingType().toLowerCase() + " booking.");
+        } else {
+            System.out.println("No strategy set.");
+        }
+    }
+
+    // Streams every live booking page by page, so memory stays flat however long the history is
+    public void displayAllBookings() {
+        displayBookings(null);
+    }
+
+    public void displayBookings(String mode) {
+        try {
+            BookingQuery query = new BookingQuery().mode(mode).pageSize(1000);
+            if (countBookings(mode) == 0) {
+                System.out.println("No previous bookings.");
+                return;
+            }
+            System.out.println("Previous bookings:");
+            long cursor;
+            do {
+                cursor = listBookings(query, System.out);
+                query.after(cursor);
+            } while (cursor != 0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
+
+// Per-mode waitlists for sold-out shared inventories. Cancellations only signal the waitlist;
+// promotion runs on a single background thread, so the booking and cancel paths never wait for it.
+// Seats freed while parties are waiting stay theirs: TravelContext refuses new bookings for the mode until
+// the queue is empty, so steady demand cannot starve the waitlist.
+class BookingWaitlist {
+    private final TravelContext context;
+    private final AtomicLong ticketCounter = new AtomicLong();
+    private final Map<String, PriorityBlockingQueue<Entry>> queues = new ConcurrentHashMap<>();
+    private final Map<String, AtomicBoolean> promotionPending = new ConcurrentHashMap<>();
+    // Parties per mode that are waiting or being booked; TravelContext turns new callers away while it is above 0
+    private final Map<String, AtomicInteger> partiesByMode = new ConcurrentHashMap<>();
+    private final Map<Long, Entry> entriesByTicket = new ConcurrentHashMap<>();
+    private final ExecutorService promoter;
+    private final LatencyHistogram promotionLatency = new LatencyHistogram();
+    private final LatencyHistogram waitTime = new LatencyHistogram();
+
+    private static final int WAITING = 0;
+    private static final int CLAIMED = 1;
+    private static final int BOOKED = 2;
+    private static final int WITHDRAWN = 3;
+
+    // Higher priority first, then first come first served.
+    // The state decides races between promotion and withdraw: only one of them can move an entry out of WAITING/CLAIMED.
+    public static class Entry implements Comparable<Entry> {
+        final AtomicInteger state = new AtomicInteger(WAITING);
+        final long ticket;
+        final int priority;
+        final TravelStrategy strategy;
+        final int distance;
+        final int numberOfMembers;
+        final long enqueuedAt;
+        final CompletableFuture<Long> booking = new CompletableFuture<>();
+
+        Entry(long ticket, int priority, TravelStrategy strategy, int distance, int numberOfMembers) {
+            this.ticket = ticket;
+            this.priority = priority;
+            this.strategy = strategy;
+            this.distance = distance;
+            this.numberOfMembers = numberOfMembers;
+            this.enqueuedAt = System.nanoTime();
+        }
+
+        public long getTicket() {
+            return ticket;
+        }
+
+        // One line for the CLI, e.g. "Ticket 3: Bus for 2 members, booked with Booking ID 17"
+        public String describe() {
+            String prefix = "Ticket " + ticket + ": " + strategy.getBookingType() + " for " + numberOfMembers + " members, ";
+            int current = state.get();
+            if (current == WITHDRAWN) {
+                return prefix + "withdrawn";
+            }
+            if (booking.isDone() && !booking.isCancelled()) {
+                return prefix + "booked with Booking ID " + booking.join();
+            }
+            return prefix + (current == WAITING ? "waiting" : "being booked");
+        }
+
+        // Completes with the booking id once the party is promoted
+        public CompletableFuture<Long> getBooking() {
+            return booking;
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            if (priority != other.priority) {
+                return Integer.compare(other.priority, priority);
+            }
+            return Long.compare(ticket, other.ticket);
+        }
+    }
+
+    public BookingWaitlist(TravelContext context) {
+        this.context = context;
+        this.promoter = Executors.newSingleThreadExecutor(task -> {
+            Thread thread = new Thread(task, "booking-waitlist-promoter");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public Entry enqueue(TravelStrategy strategy, int distance, int numberOfMembers, int priority) {
+        Entry entry = new Entry(ticketCounter.incrementAndGet(), priority, strategy, distance, numberOfMembers);
+        entriesByTicket.put(entry.ticket, entry);
+        partiesFor(strategy).incrementAndGet();
+        queues.computeIfAbsent(strategy.getBookingType(), mode -> new PriorityBlockingQueue<>()).add(entry);
+        // Seats may have been freed between the failed booking and the enqueue
+        seatsReleased(strategy);
+        return entry;
+    }
+
+    // Succeeds until the party has been booked; a booking made concurrently by the promoter is undone by the promoter
+    public boolean withdraw(long ticket) {
+        Entry entry = entriesByTicket.get(ticket);
+        if (entry == null) {
+            return false;
+        }
+        while (true) {
+            int state = entry.state.get();
+            if (state == BOOKED || state == WITHDRAWN) {
+                return false;
+            }
+            if (entry.state.compareAndSet(state, WITHDRAWN)) {
+                break;
+            }
+        }
+        entriesByTicket.remove(ticket);
+        queues.get(entry.strategy.getBookingType()).remove(entry);
+        partiesFor(entry.strategy).decrementAndGet();
+        entry.booking.cancel(false);
+        // The withdrawn party may have been blocking smaller ones behind it
+        seatsReleased(entry.strategy);
+        return true;
+    }
+
+    public boolean hasWaiting(TravelStrategy strategy) {
+        AtomicInteger parties = partiesByMode.get(strategy.getBookingType());
+        return parties != null && parties.get() > 0;
+    }
+
+    private AtomicInteger partiesFor(TravelStrategy strategy) {
+        return partiesByMode.computeIfAbsent(strategy.getBookingType(), mode -> new AtomicInteger());
+    }
+
+    public int size(String mode) {
+        PriorityBlockingQueue<Entry> queue = queues.get(mode);
+        return queue != null ? queue.size() : 0;
+    }
+
+    public Set<String> modes() {
+        return new TreeSet<>(queues.keySet());
+    }
+
+    // Called on the cancel path: schedules at most one pending promotion run per mode
+    void seatsReleased(TravelStrategy strategy) {
+        PriorityBlockingQueue<Entry> queue = queues.get(strategy.getBookingType());
+        if (queue == null || queue.isEmpty()) {
+            return;
+        }
+        AtomicBoolean pending = promotionPending.computeIfAbsent(strategy.getBookingType(), mode -> new AtomicBoolean());
+        if (pending.compareAndSet(false, true)) {
+            long signalledAt = System.nanoTime();
+            promoter.execute(() -> {
+                pending.set(false);
+                promote(strategy, queue, signalledAt);
+            });
+        }
+    }
+
+    // Promotes in strict queue order: a party that does not fit yet blocks the ones behind it
+    private void promote(TravelStrategy strategy, PriorityBlockingQueue<Entry> queue, long signalledAt) {
+        Entry head;
+        while ((head = queue.peek()) != null) {
+            if (head.state.get() == WITHDRAWN) {
+                queue.remove(head);
+                continue;
+            }
+            if (!context.hasFreeSeats(strategy, head.numberOfMembers)) {
+                return;
+            }
+            if (!queue.remove(head) || !head.state.compareAndSet(WAITING, CLAIMED)) {
+                continue;
+            }
+            long bookingId;
+            try {
+                bookingId = context.tryBookFromWaitlist(strategy, head.distance, head.numberOfMembers);
+            } catch (BookingJournal.JournalException e) {
+                bookingId = 0;
+            }
+            if (bookingId == 0) {
+                // Back in line unless it was withdrawn while claimed
+                if (head.state.compareAndSet(CLAIMED, WAITING)) {
+                    queue.add(head);
+                }
+                return;
+            }
+            if (!head.state.compareAndSet(CLAIMED, BOOKED)) {
+                // Withdrawn while the booking was being made: give the seats back
+                context.tryCancel(bookingId);
+                continue;
+            }
+            long now = System.nanoTime();
+            entriesByTicket.remove(head.ticket);
+            partiesFor(strategy).decrementAndGet();
+            promotionLatency.record(now - signalledAt);
+            waitTime.record(now - head.enqueuedAt);
+            head.booking.complete(bookingId);
+        }
+    }
+
+    // Time from the cancellation signal to the promoted booking
+    public LatencyHistogram getPromotionLatency() {
+        return promotionLatency;
+    }
+
+    public LatencyHistogram getWaitTime() {
+        return waitTime;
+    }
+
+    public void shutdown() {
+        promoter.shutdown();
+    }
+}
+
+// Log-linear latency histogram in the spirit of HdrHistogram: 16 sub-buckets per power of two (~6% precision),
+// fixed memory, lock-free recording
+class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder total = new LongAdder();
+
+    public void record(long nanos) {
+        counts.incrementAndGet(indexOf(Math.max(0, nanos)));
+        total.increment();
+    }
+
+    private static int indexOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        int sub = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+        return (shift + 1) * SUB_BUCKETS + sub;
+    }
+
+    private static long highestValueIn(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        int sub = index % SUB_BUCKETS;
+        return ((long) (SUB_BUCKETS + sub + 1) << shift) - 1;
+    }
+
+    public long getCount() {
+        return total.sum();
+    }
+
+    // Upper bound of the bucket holding the given quantile, in nanoseconds
+    public long valueAtQuantile(double quantile) {
+        long count = total.sum();
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(quantile * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return highestValueIn(i);
+            }
+        }
+        return highestValueIn(BUCKETS - 1);
+    }
+}
+
+// Counters and latency histograms for TravelContext; everything is recorded without locks
+class BookingMetrics {
+    private final LongAdder bookings = new LongAdder();
+    private final LongAdder rejections = new LongAdder();
+    private final LongAdder cancellations = new LongAdder();
+    private final LongAdder cancelMisses = new LongAdder();
+    private final Map<String, DoubleAdder> revenueByMode = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> bookingsByMode = new ConcurrentHashMap<>();
+    private final LatencyHistogram bookLatency = new LatencyHistogram();
+    private final LatencyHistogram cancelLatency = new LatencyHistogram();
+    private volatile BookingWaitlist waitlist;
+
+    // Adds the waitlist's queue sizes and promotion latencies to every snapshot
+    public void setWaitlist(BookingWaitlist waitlist) {
+        this.waitlist = waitlist;
+    }
+
+    void recordBooking(String mode, boolean accepted, double amount, long latencyNanos) {
+        recordBatchRow(mode, accepted, amount);
+        bookLatency.record(latencyNanos);
+    }
+
+    void recordBatchRow(String mode, boolean accepted, double amount) {
+        if (accepted) {
+            bookings.increment();
+            bookingsByMode.computeIfAbsent(mode, key -> new LongAdder()).increment();
+            revenueByMode.computeIfAbsent(mode, key -> new DoubleAdder()).add(amount);
+        } else {
+            rejections.increment();
+        }
+    }
+
+    void recordCancel(boolean found, long latencyNanos) {
+        if (found) {
+            cancellations.increment();
+        } else {
+            cancelMisses.increment();
+        }
+        cancelLatency.record(latencyNanos);
+    }
+
+    public LatencyHistogram getBookLatency() {
+        return bookLatency;
+    }
+
+    public LatencyHistogram getCancelLatency() {
+        return cancelLatency;
+    }
+
+    public String snapshot() {
+        StringBuilder out = new StringBuilder(512);
+        out.append("timestamp=").append(System.currentTimeMillis()).append('\n');
+        out.append("bookings=").append(bookings.sum()).append('\n');
+        out.append("rejections=").append(rejections.sum()).append('\n');
+        out.append("cancellations=").append(cancellations.sum()).append('\n');
+        out.append("cancel_misses=").append(cancelMisses.sum()).append('\n');
+        for (String mode : new TreeSet<>(bookingsByMode.keySet())) {
+            out.append("bookings.").append(mode).append('=').append(bookingsByMode.get(mode).sum()).append('\n');
+            out.append("revenue.").append(mode).append('=').append(revenueByMode.get(mode).sum()).append('\n');
+        }
+        appendLatency(out, "book", bookLatency);
+        appendLatency(out, "cancel", cancelLatency);
+        BookingWaitlist waitlist = this.waitlist;
+        if (waitlist != null) {
+            for (String mode : waitlist.modes()) {
+                out.append("waitlist.").append(mode).append('=').append(waitlist.size(mode)).append('\n');
+            }
+            appendLatency(out, "promotion", waitlist.getPromotionLatency());
+            appendLatency(out, "waitlist_wait", waitlist.getWaitTime());
+        }
+        return out.toString();
+    }
+
+    private static void appendLatency(StringBuilder out, String name, LatencyHistogram histogram) {
+        out.append(name).append("_latency.count=").append(histogram.getCount()).append('\n');
+        out.append(name).append("_latency.p50_us=").append(histogram.valueAtQuantile(0.50) / 1000).append('\n');
+        out.append(name).append("_latency.p99_us=").append(histogram.valueAtQuantile(0.99) / 1000).append('\n');
+        out.append(name).append("_latency.p999_us=").append(histogram.valueAtQuantile(0.999) / 1000).append('\n');
+    }
+
+    // Rewrites the snapshot file periodically; the write goes to a temp file that is then moved into place
+    public ScheduledExecutorService exportPeriodically(Path file, long periodSeconds) {
+        ScheduledExecutorService exporter = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "booking-metrics-export");
+            thread.setDaemon(true);
+            return thread;
+        });
+        exporter.scheduleAtFixedRate(() -> {
+            try {
+                Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+                Files.write(temp, snapshot().getBytes(StandardCharsets.UTF_8));
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                Logger.getLogger(BookingMetrics.class.getName()).log(Level.WARNING, "Could not export booking metrics", e);
+            }
+        }, periodSeconds, periodSeconds, TimeUnit.SECONDS);
+        return exporter;
+    }
+}
+
+// Seat bitmap for one departure; the bitmap is only allocated once the first seat is sold
+class SeatMap {
+    private final int capacity;
+    private long[] taken;
+    private int available;
+
+    public SeatMap(int capacity) {
+        this.capacity = capacity;
+        this.available = capacity;
+    }
+
+    // Returns the first seat of a free run of the given length, or -1 when no such run exists
+    public synchronized int allocateContiguous(int seats) {
+        if (seats <= 0 || seats > available) {
+            return -1;
+        }
+        if (taken == null) {
+            taken = new long[(capacity + 63) >>> 6];
+        }
+        int run = 0;
+        int start = 0;
+        int seat = 0;
+        while (seat < capacity) {
+            long word = taken[seat >>> 6];
+            if (word == -1L) {
+                run = 0;
+                seat = ((seat >>> 6) + 1) << 6;
+                continue;
+            }
+            if ((word & (1L << seat)) == 0) {
+                if (run++ == 0) {
+                    start = seat;
+                }
+                if (run == seats) {
+                    mark(start, seats, true);
+                    return start;
+                }
+            } else {
+                run = 0;
+            }
+            seat++;
+        }
+        return -1;
+    }
+
+    // Marks a known run as taken, used when replaying the journal
+    public synchronized void reserve(int firstSeat, int seats) {
+        if (taken == null) {
+            taken = new long[(capacity + 63) >>> 6];
+        }
+        mark(firstSeat, seats, true);
+    }
+
+    public synchronized void release(int firstSeat, int seats) {
+        if (taken != null) {
+            mark(firstSeat, seats, false);
+        }
+    }
+
+    private void mark(int firstSeat, int seats, boolean reserve) {
+        for (int seat = firstSeat; seat < firstSeat + seats; seat++) {
+            long bit = 1L << seat;
+            boolean isTaken = (taken[seat >>> 6] & bit) != 0;
+            if (isTaken != reserve) {
+                taken[seat >>> 6] ^= bit;
+                available += reserve ? -1 : 1;
+            }
+        }
+    }
+
+    public synchronized int available() {
+        return available;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+}
+
+// Per-mode, per-departure seat maps; departures without any sale take no memory
+class TripInventory {
+    private final Map<String, LongKeyMap<SeatMap>> departuresByMode = new ConcurrentHashMap<>();
+
+    public SeatMap seatMap(TravelStrategy strategy, long departureId) {
+        LongKeyMap<SeatMap> departures = departuresByMode.computeIfAbsent(strategy.getBookingType(), mode -> new LongKeyMap<>());
+        synchronized (departures) {
+            SeatMap seatMap = departures.get(departureId);
+            if (seatMap == null) {
+                seatMap = new SeatMap(strategy.getMaxSeats());
+                departures.put(departureId, seatMap);
+            }
+            return seatMap;
+        }
+    }
+
+    public int available(TravelStrategy strategy, long departureId) {
+        LongKeyMap<SeatMap> departures = departuresByMode.get(strategy.getBookingType());
+        if (departures == null) {
+            return strategy.getMaxSeats();
+        }
+        synchronized (departures) {
+            SeatMap seatMap = departures.get(departureId);
+            return seatMap != null ? seatMap.available() : strategy.getMaxSeats();
+        }
+    }
+}
+
+class FareQuote {
+    private final String mode;
+    private final double amount;
+    private final boolean available;
+
+    FareQuote(String mode, double amount, boolean available) {
+        this.mode = mode;
+        this.amount = amount;
+        this.available = available;
+    }
+
+    public String getMode() {
+        return mode;
+    }
+
+    public double getAmount() {
+        return amount;
+    }
+
+    public boolean isAvailable() {
+        return available;
+    }
+
+    @Override
+    public String toString() {
+        return mode + ": $" + amount + (available ? "" : " (sold out)");
+    }
+}
+
+// Read-only fare comparison across all modes. Fares are cached per (distance, members) with a TTL;
+// availability is read live from the seat inventories on every call because it changes with each booking.
+class FareQuoter {
+    private static final long DEFAULT_TTL_MILLIS = 60_000;
+    private static final int DEFAULT_MAX_ENTRIES = 10_000;
+
+    private final TravelContext context;
+    private final TravelStrategy[] strategies;
+    private final long ttlNanos;
+    private final int maxEntries;
+    private final ConcurrentHashMap<Long, CachedFares> cache = new ConcurrentHashMap<>();
+
+    private static class CachedFares {
+        final double[] amounts;
+        final long expiresAt;
+
+        CachedFares(double[] amounts, long expiresAt) {
+            this.amounts = amounts;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    public FareQuoter(TravelContext context, Collection<TravelStrategy> strategies) {
+        this(context, strategies, DEFAULT_TTL_MILLIS, DEFAULT_MAX_ENTRIES);
+    }
+
+    public FareQuoter(TravelContext context, Collection<TravelStrategy> strategies, long ttlMillis, int maxEntries) {
+        this.context = context;
+        this.strategies = strategies.toArray(new TravelStrategy[0]);
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        this.maxEntries = maxEntries;
+    }
+
+    // Available modes first, each group ordered by fare. Rejects the requests TravelContext would not book.
+    public List<FareQuote> quote(int distance, int numberOfMembers) {
+        if (!TravelContext.isValidRequest(distance, numberOfMembers)) {
+            throw new IllegalArgumentException("Invalid distance or number of members: " + distance + ", " + numberOfMembers);
+        }
+        double[] amounts = faresFor(distance, numberOfMembers);
+        List<FareQuote> quotes = new ArrayList<>(strategies.length);
+        for (int i = 0; i < strategies.length; i++) {
+            quotes.add(new FareQuote(strategies[i].getBookingType(), amounts[i], context.isAvailable(strategies[i], numberOfMembers)));
+        }
+        quotes.sort(Comparator.comparing((FareQuote quote) -> !quote.isAvailable()).thenComparingDouble(FareQuote::getAmount));
+        return quotes;
+    }
+
+    private double[] faresFor(int distance, int numberOfMembers) {
+        long key = ((long) distance << 32) | (numberOfMembers & 0xFFFFFFFFL);
+        long now = System.nanoTime();
+        CachedFares cached = cache.get(key);
+        if (cached != null && now - cached.expiresAt < 0) {
+            return cached.amounts;
+        }
+        double[] amounts = new double[strategies.length];
+        for (int i = 0; i < strategies.length; i++) {
+            amounts[i] = strategies[i].calculateAmount(distance, numberOfMembers);
+        }
+        if (cache.size() >= maxEntries) {
+            evictExpired(now);
+        }
+        cache.put(key, new CachedFares(amounts, now + ttlNanos));
+        return amounts;
+    }
+
+    private void evictExpired(long now) {
+        cache.values().removeIf(entry -> now - entry.expiresAt >= 0);
+        if (cache.size() >= maxEntries) {
+            cache.clear();
+        }
+    }
+
+    public int cachedEntries() {
+        return cache.size();
+    }
+}
+
+// HTTP front end for TravelContext built on the JDK's HttpServer. Each request runs on its own virtual thread
+// when the JDK provides them (21+), otherwise on a cached pool of platform threads.
+//   GET /book?mode=Bus&distance=420&members=6[&departure=7]  -> 200 "<id> <amount>" or 409
+//        [&waitlist=true]                                     -> 202 "waitlisted <ticket>" instead of 409
+//   GET /cancel?id=42                                        -> 200 or 404
+// Book and cancel answer 503 when the journal refuses the change; nothing is booked or cancelled then.
+//   GET /bookings?after=0&limit=100[&mode=Bus&min=0&max=500]  -> 200 one booking per line, X-Next-Cursor header (limit 1-1000)
+class BookingServer {
+    private final TravelContext context;
+    private final Map<String, TravelStrategy> strategies;
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    public BookingServer(TravelContext context, Map<String, TravelStrategy> strategies, int port) throws IOException {
+        this.context = context;
+        this.strategies = strategies;
+        this.server = HttpServer.create(new InetSocketAddress("localhost", port), 4096);
+        this.executor = newRequestExecutor();
+        server.setExecutor(executor);
+        server.createContext("/book", this::handleBook);
+        server.createContext("/cancel", this::handleCancel);
+        server.createContext("/bookings", this::handleBookings);
+    }
+
+    static ExecutorService newRequestExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    public String getExecutorDescription() {
+        return executor.getClass().getSimpleName().contains("ThreadPerTask") ? "virtual threads" : "platform thread pool";
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdown();
+    }
+
+    private void handleBook(HttpExchange exchange) throws IOException {
+        try {
+            Map<String, String> query = parseQuery(exchange);
+            TravelStrategy strategy = strategies.get(query.get("mode"));
+            if (strategy == null) {
+                respond(exchange, 400, "Invalid transport mode.");
+                return;
+            }
+            int distance = Integer.parseInt(query.get("distance"));
+            int numberOfMembers = Integer.parseInt(query.get("members"));
+            if (!TravelContext.isValidRequest(distance, numberOfMembers)) {
+                respond(exchange, 400, "Invalid input.");
+                return;
+            }
+            long bookingId = query.containsKey("departure")
+                    ? context.tryBook(strategy, Long.parseLong(query.get("departure")), distance, numberOfMembers)
+                    : context.tryBook(strategy, distance, numberOfMembers);
+            BookingWaitlist waitlist = context.getWaitlist();
+            if (bookingId == 0 && waitlist != null && "true".equals(query.get("waitlist")) && !query.containsKey("departure")
+                    && numberOfMembers > 0 && numberOfMembers <= strategy.getMaxSeats()) {
+                respond(exchange, 202, "waitlisted " + waitlist.enqueue(strategy, distance, numberOfMembers, 0).getTicket());
+            } else if (bookingId == 0) {
+                respond(exchange, 409, "No seats available.");
+            } else {
+                respond(exchange, 200, bookingId + " " + strategy.calculateAmount(distance, numberOfMembers));
+            }
+        } catch (BookingJournal.JournalException e) {
+            respond(exchange, 503, "Booking could not be recorded.");
+        } catch (RuntimeException e) {
+            respond(exchange, 400, "Invalid input.");
+        }
+    }
+
+    private void handleCancel(HttpExchange exchange) throws IOException {
+        try {
+            long bookingId = Long.parseLong(parseQuery(exchange).get("id"));
+            if (context.tryCancel(bookingId)) {
+                respond(exchange, 200, "Booking canceled.");
+            } else {
+                respond(exchange, 404, "Booking ID not found.");
+            }
+        } catch (BookingJournal.JournalException e) {
+            respond(exchange, 503, "Cancellation could not be recorded.");
+        } catch (RuntimeException e) {
+            respond(exchange, 400, "Invalid input.");
+        }
+    }
+
+    private void handleBookings(HttpExchange exchange) throws IOException {
+        try {
+            Map<String, String> query = parseQuery(exchange);
+            BookingQuery bookingQuery = new BookingQuery()
+                    .after(Long.parseLong(query.getOrDefault("after", "0")))
+                    .pageSize(Integer.parseInt(query.getOrDefault("limit", "100")))
+                    .mode(query.get("mode"))
+                    .amountBetween(Double.parseDouble(query.getOrDefault("min", "-Infinity")),
+                            Double.parseDouble(query.getOrDefault("max", "Infinity")));
+            StringBuilder out = new StringBuilder();
+            long next = context.listBookings(bookingQuery, out);
+            exchange.getResponseHeaders().set("X-Next-Cursor", Long.toString(next));
+            respond(exchange, 200, out.toString());
+        } catch (RuntimeException e) {
+            respond(exchange, 400, "Invalid input.");
+        }
+    }
+
+    private static Map<String, String> parseQuery(HttpExchange exchange) {
+        Map<String, String> query = new HashMap<>();
+        String raw = exchange.getRequestURI().getRawQuery();
+        if (raw != null) {
+            for (String pair : raw.split("&")) {
+                int eq = pair.indexOf('=');
+                if (eq > 0) {
+                    query.put(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8),
+                            URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+                }
+            }
+        }
+        return query;
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
+
+// Load generator for BookingServer: one worker per simulated connection, mixing book, cancel and listing calls
+class BookingLoadClient {
+    private static final String[] MODES = {"Bus", "Train", "Flight"};
+
+    private final URI baseUri;
+    private final int connections;
+    private final int requests;
+
+    public static class Report {
+        final long elapsedNanos;
+        final Map<String, long[]> latencies;
+        final long errors;
+
+        Report(long elapsedNanos, Map<String, long[]> latencies, long errors) {
+            this.elapsedNanos = elapsedNanos;
+            this.latencies = latencies;
+            this.errors = errors;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder out = new StringBuilder();
+            long total = 0;
+            for (long[] samples : latencies.values()) {
+                total += samples.length;
+            }
+            double seconds = elapsedNanos / 1_000_000_000.0;
+            out.append(String.format("%d requests in %.2f s: %.0f req/s, %d errors%n", total, seconds, total / seconds, errors));
+            for (Map.Entry<String, long[]> entry : latencies.entrySet()) {
+                long[] samples = entry.getValue();
+                Arrays.sort(samples);
+                out.append(String.format("  %-8s n=%-8d p50=%.2f ms  p99=%.2f ms%n", entry.getKey(), samples.length,
+                        percentile(samples, 0.50) / 1_000_000.0, percentile(samples, 0.99) / 1_000_000.0));
+            }
+            return out.toString();
+        }
+
+        private static long percentile(long[] sorted, double fraction) {
+            return sorted.length == 0 ? 0 : sorted[Math.min(sorted.length - 1, (int) (sorted.length * fraction))];
+        }
+    }
+
+    public BookingLoadClient(URI baseUri, int connections, int requests) {
+        this.baseUri = baseUri;
+        this.connections = connections;
+        this.requests = requests;
+    }
+
+    public Report run() throws InterruptedException {
+        ExecutorService workers = BookingServer.newRequestExecutor();
+        HttpClient client = HttpClient.newBuilder().executor(workers).build();
+        int perConnection = Math.max(1, requests / connections);
+        List<Map<String, LongList>> results = Collections.synchronizedList(new ArrayList<>());
+        long[] errors = new long[connections];
+        CountDownLatch done = new CountDownLatch(connections);
+
+        long start = System.nanoTime();
+        for (int c = 0; c < connections; c++) {
+            int worker = c;
+            workers.execute(() -> {
+                Map<String, LongList> samples = new HashMap<>();
+                Deque<Long> ownBookings = new ArrayDeque<>();
+                Random random = new Random(worker);
+                try {
+                    for (int i = 0; i < perConnection; i++) {
+                        int pick = random.nextInt(100);
+                        String operation;
+                        String path;
+                        if (pick < 2) {
+                            operation = "display";
+                            path = "/bookings";
+                        } else if (pick < 30 && !ownBookings.isEmpty()) {
+                            operation = "cancel";
+                            path = "/cancel?id=" + ownBookings.poll();
+                        } else {
+                            operation = "book";
+                            path = "/book?mode=" + MODES[random.nextInt(MODES.length)] + "&distance=" + (1 + random.nextInt(900))
+                                    + "&members=" + (1 + random.nextInt(4));
+                        }
+                        long sent = System.nanoTime();
+                        try {
+                            HttpResponse<String> response = client.send(HttpRequest.newBuilder(baseUri.resolve(path)).build(),
+                                    HttpResponse.BodyHandlers.ofString());
+                            samples.computeIfAbsent(operation, op -> new LongList()).add(System.nanoTime() - sent);
+                            if (operation.equals("book") && response.statusCode() == 200) {
+                                String body = response.body();
+                                ownBookings.add(Long.parseLong(body.substring(0, body.indexOf(' '))));
+                            }
+                        } catch (IOException e) {
+                            errors[worker]++;
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    results.add(samples);
+                    done.countDown();
+                }
+            });
+        }
+        done.await();
+        long elapsed = System.nanoTime() - start;
+        workers.shutdown();
+
+        Map<String, LongList> merged = new TreeMap<>();
+        for (Map<String, LongList> samples : results) {
+            samples.forEach((operation, list) -> merged.computeIfAbsent(operation, op -> new LongList()).addAll(list));
+        }
+        Map<String, long[]> latencies = new TreeMap<>();
+        merged.forEach((operation, list) -> latencies.put(operation, list.toArray()));
+        return new Report(elapsed, latencies, Arrays.stream(errors).sum());
+    }
+
+    private static class LongList {
+        private long[] values = new long[64];
+        private int size;
+
+        void add(long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        void addAll(LongList other) {
+            for (int i = 0; i < other.size; i++) {
+                add(other.values[i]);
+            }
+        }
+
+        long[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
+
+// Append-only, memory-mapped log of book/cancel events with fixed-width records.
+// Appends land in the mapping immediately; a flusher thread forces them to disk in groups every
+// FLUSH_INTERVAL_MILLIS (or sooner once GROUP_SIZE records are waiting). Callers do not wait for that flush:
+// a booking survives a crash of this process as soon as it is acknowledged, but an operating system crash or
+// power loss can lose the bookings and cancellations acknowledged in the last flush interval. Call sync() where
+// that window is not acceptable.
+// Records are mapped in segments (SEGMENT_RECORDS records by default), so the log is not limited by the 2 GB reach of one mapping.
+class BookingJournal implements AutoCloseable {
+    private static final int MAGIC = 0x54424A31; // "TBJ1"
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 16;
+    static final int RECORD_SIZE = 40;
+    private static final byte BOOK = 1;
+    private static final byte CANCEL = 2;
+    private static final int INITIAL_MAPPING = 1 << 20;
+    static final int SEGMENT_RECORDS = 1 << 22;
+    private static final int GROUP_SIZE = 256;
+    private static final long FLUSH_INTERVAL_MILLIS = 10;
+
+    private final FileChannel channel;
+    private final TravelStrategy[] modes;
+    private final Map<String, Integer> modeCodes = new HashMap<>();
+    private final Object lock = new Object();
+    private final Thread flusher;
+    private final MappedByteBuffer header;
+    private final int segmentRecords;
+    private final long segmentSize;
+    private final List<MappedByteBuffer> segments = new ArrayList<>();
+    // Record counts rather than byte offsets: record n lives in segment n / segmentRecords
+    private long position;
+    private long flushedPosition;
+    private boolean closed;
+
+    // Thrown when a record cannot be appended; nothing has been written for it
+    public static class JournalException extends IllegalStateException {
+        private static final long serialVersionUID = 1L;
+
+        JournalException(String message) {
+            super(message);
+        }
+
+        JournalException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
+
+    public interface ReplayHandler {
+        // departureId is 0 for bookings against the mode's shared inventory, firstSeat is then -1
+        void onBook(long bookingId, TravelStrategy strategy, long departureId, int firstSeat, int distance, int numberOfMembers, double amount);
+        void onCancel(long bookingId);
+    }
+
+    public static class RecoveryStats {
+        final long bookEvents;
+        final long cancelEvents;
+        final long elapsedNanos;
+
+        RecoveryStats(long bookEvents, long cancelEvents, long elapsedNanos) {
+            this.bookEvents = bookEvents;
+            this.cancelEvents = cancelEvents;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return "Recovered " + bookEvents + " bookings and " + cancelEvents + " cancellations in "
+                    + String.format("%.1f", elapsedNanos / 1_000_000.0) + " ms";
+        }
+    }
+
+    // Mode codes are positions in the strategies sorted by booking type, so they do not depend on map order
+    public BookingJournal(Path file, Collection<TravelStrategy> strategies) throws IOException {
+        this(file, strategies, SEGMENT_RECORDS);
+    }
+
+    // A journal must always be reopened with the segment size it was written with
+    BookingJournal(Path file, Collection<TravelStrategy> strategies, int segmentRecords) throws IOException {
+        this.segmentRecords = segmentRecords;
+        this.segmentSize = (long) segmentRecords * RECORD_SIZE;
+        this.modes = strategies.toArray(new TravelStrategy[0]);
+        Arrays.sort(modes, Comparator.comparing(TravelStrategy::getBookingType));
+        if (modes.length > Byte.MAX_VALUE) {
+            throw new IllegalArgumentException("Too many transport modes for the journal format");
+        }
+        for (int i = 0; i < modes.length; i++) {
+            modeCodes.put(modes[i].getBookingType(), i);
+        }
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long size = channel.size();
+        this.header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+        if (size == 0) {
+            header.putInt(0, MAGIC);
+            header.putInt(4, VERSION);
+            header.putInt(8, RECORD_SIZE);
+            header.force();
+        } else if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION || header.getInt(8) != RECORD_SIZE) {
+            channel.close();
+            throw new IOException("Not a booking journal (or unsupported version): " + file);
+        }
+        // Map everything the file already holds, so replay can read it
+        long recordBytes = Math.max(INITIAL_MAPPING, size - HEADER_SIZE);
+        for (long start = 0; start < recordBytes; start += segmentSize) {
+            segments.add(mapSegment(segments.size(), Math.min(segmentSize, Math.max(INITIAL_MAPPING, recordBytes - start))));
+        }
+        this.flusher = new Thread(this::flushLoop, "booking-journal-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    private MappedByteBuffer mapSegment(int index, long bytes) throws IOException {
+        return channel.map(FileChannel.MapMode.READ_WRITE, HEADER_SIZE + index * segmentSize, bytes);
+    }
+
+    private int segmentOf(long record) {
+        return (int) (record / segmentRecords);
+    }
+
+    private int offsetOf(long record) {
+        return (int) (record % segmentRecords) * RECORD_SIZE;
+    }
+
+    // Scans records from the start; the first zeroed or torn record marks the end of the log
+    public RecoveryStats replay(ReplayHandler handler) {
+        long start = System.nanoTime();
+        long books = 0;
+        long cancels = 0;
+        synchronized (lock) {
+            long record = 0;
+            while (segmentOf(record) < segments.size()) {
+                MappedByteBuffer segment = segments.get(segmentOf(record));
+                int at = offsetOf(record);
+                if (at + RECORD_SIZE > segment.capacity()) {
+                    break;
+                }
+                byte type = segment.get(at);
+                if (type == BOOK) {
+                    int code = segment.get(at + 1);
+                    if (code < 0 || code >= modes.length) {
+                        break;
+                    }
+                    handler.onBook(segment.getLong(at + 8), modes[code], segment.getLong(at + 32), segment.getInt(at + 20) - 1,
+                            segment.getInt(at + 16), segment.getInt(at + 4), segment.getDouble(at + 24));
+                    books++;
+                } else if (type == CANCEL) {
+                    handler.onCancel(segment.getLong(at + 8));
+                    cancels++;
+                } else {
+                    break;
+                }
+                record++;
+            }
+            position = record;
+            flushedPosition = record;
+        }
+        return new RecoveryStats(books, cancels, System.nanoTime() - start);
+    }
+
+    // The type byte is written last, so a record torn by a crash reads as the end of the log
+    public void appendBook(long bookingId, TravelStrategy strategy, long departureId, int firstSeat, int distance, int numberOfMembers, double amount) {
+        Integer code = modeCodes.get(strategy.getBookingType());
+        if (code == null) {
+            throw new IllegalArgumentException("Unknown transport mode: " + strategy.getBookingType());
+        }
+        synchronized (lock) {
+            MappedByteBuffer segment = reserveRecord();
+            int at = offsetOf(position);
+            segment.put(at + 1, code.byteValue());
+            segment.putInt(at + 4, numberOfMembers);
+            segment.putLong(at + 8, bookingId);
+            segment.putInt(at + 16, distance);
+            segment.putInt(at + 20, firstSeat + 1);
+            segment.putDouble(at + 24, amount);
+            segment.putLong(at + 32, departureId);
+            segment.put(at, BOOK);
+            recordAppended();
+        }
+    }
+
+    public void appendCancel(long bookingId) {
+        synchronized (lock) {
+            MappedByteBuffer segment = reserveRecord();
+            int at = offsetOf(position);
+            segment.putLong(at + 8, bookingId);
+            segment.put(at, CANCEL);
+            recordAppended();
+        }
+    }
+
+    // Returns the segment that has room for the record at position, growing or adding a mapping if needed
+    private MappedByteBuffer reserveRecord() {
+        if (closed) {
+            throw new JournalException("booking journal is closed");
+        }
+        int index = segmentOf(position);
+        int at = offsetOf(position);
+        try {
+            if (index == segments.size()) {
+                segments.add(mapSegment(index, Math.min(segmentSize, INITIAL_MAPPING)));
+            } else if (at + RECORD_SIZE > segments.get(index).capacity()) {
+                MappedByteBuffer segment = segments.get(index);
+                segment.force();
+                segments.set(index, mapSegment(index, Math.min(segmentSize, (long) segment.capacity() * 2)));
+            }
+        } catch (IOException e) {
+            throw new JournalException("could not grow booking journal", e);
+        }
+        return segments.get(index);
+    }
+
+    private void recordAppended() {
+        position++;
+        if (position - flushedPosition >= GROUP_SIZE) {
+            lock.notifyAll();
+        }
+    }
+
+    // Blocks until every record appended so far is on disk
+    public void sync() {
+        synchronized (lock) {
+            forceLocked();
+        }
+    }
+
+    // Forces outside the lock so appenders keep writing while a group is being flushed
+    private void flushLoop() {
+        while (true) {
+            List<MappedByteBuffer> targets;
+            long targetPosition;
+            synchronized (lock) {
+                try {
+                    lock.wait(FLUSH_INTERVAL_MILLIS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (closed) {
+                    return;
+                }
+                if (flushedPosition == position) {
+                    continue;
+                }
+                targets = dirtySegments();
+                targetPosition = position;
+            }
+            for (MappedByteBuffer target : targets) {
+                target.force();
+            }
+            synchronized (lock) {
+                flushedPosition = Math.max(flushedPosition, targetPosition);
+            }
+        }
+    }
+
+    // Segments holding records appended since the last flush
+    private List<MappedByteBuffer> dirtySegments() {
+        int last = segmentOf(position - 1);
+        return new ArrayList<>(segments.subList(Math.min(segmentOf(flushedPosition), last), last + 1));
+    }
+
+    private void forceLocked() {
+        if (flushedPosition < position) {
+            for (MappedByteBuffer segment : dirtySegments()) {
+                segment.force();
+            }
+            flushedPosition = position;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (lock) {
+            if (closed) {
+                return;
+            }
+            forceLocked();
+            closed = true;
+            lock.notifyAll();
+        }
+        channel.close();
+    }
+}
+
+// Non-interactive loader for CSV (distance,members,mode) or JSON-lines ({"distance":..,"members":..,"mode":".."}) files
+class BookingIngest {
+    private static final int READ_BUFFER_SIZE = 1 << 16;
+    private static final int MAX_LINE_LENGTH = 4096;
+    private static final byte[] DISTANCE_KEY = "\"distance\"".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] MEMBERS_KEY = "\"members\"".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] MODE_KEY = "\"mode\"".getBytes(StandardCharsets.US_ASCII);
+
+    private final TravelContext context;
+    private final TravelStrategy[] modes;
+    private final byte[][] modeNames;
+    private final int batchSize;
+    private final int maxPendingBatches;
+
+    public static class Stats {
+        long rows;
+        long accepted;
+        long rejected;
+        long malformed;
+        long elapsedNanos;
+
+        public long getRows() {
+            return rows;
+        }
+
+        public long getAccepted() {
+            return accepted;
+        }
+
+        public long getRejected() {
+            return rejected;
+        }
+
+        public long getMalformed() {
+            return malformed;
+        }
+
+        @Override
+        public String toString() {
+            double seconds = elapsedNanos / 1_000_000_000.0;
+            return "Ingested " + rows + " rows (" + accepted + " booked, " + rejected + " rejected, " + malformed
+                    + " malformed) in " + String.format("%.2f", seconds) + " s, "
+                    + String.format("%.0f", seconds > 0 ? rows / seconds : 0) + " rows/s";
+        }
+    }
+
+    private static class Batch {
+        final TravelStrategy[] modes;
+        final int[] distances;
+        final int[] members;
+        int size;
+
+        Batch(int capacity) {
+            modes = new TravelStrategy[capacity];
+            distances = new int[capacity];
+            members = new int[capacity];
+        }
+    }
+
+    public BookingIngest(TravelContext context, Map<String, TravelStrategy> strategies) {
+        this(context, strategies, 4096, 4);
+    }
+
+    public BookingIngest(TravelContext context, Map<String, TravelStrategy> strategies, int batchSize, int maxPendingBatches) {
+        this.context = context;
+        this.modes = strategies.values().toArray(new TravelStrategy[0]);
+        this.modeNames = new byte[modes.length][];
+        for (int i = 0; i < modes.length; i++) {
+            modeNames[i] = modes[i].getBookingType().getBytes(StandardCharsets.US_ASCII);
+        }
+        this.batchSize = batchSize;
+        this.maxPendingBatches = maxPendingBatches;
+    }
+
+    // Parses on the calling thread and books on a consumer thread; the bounded queue blocks the parser when booking falls behind.
+    // If booking throws, the consumer keeps recycling batches so the parser never blocks, and ingest fails with the cause.
+    public Stats ingest(Path file) throws IOException, InterruptedException {
+        Stats stats = new Stats();
+        long start = System.nanoTime();
+        BlockingQueue<Batch> full = new ArrayBlockingQueue<>(maxPendingBatches);
+        BlockingQueue<Batch> free = new ArrayBlockingQueue<>(maxPendingBatches + 2);
+        for (int i = 0; i < maxPendingBatches + 2; i++) {
+            free.add(new Batch(batchSize));
+        }
+        Batch endOfInput = new Batch(0);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        Thread booker = new Thread(() -> {
+            try {
+                while (true) {
+                    Batch batch = full.take();
+                    if (batch == endOfInput) {
+                        return;
+                    }
+                    if (failure.get() == null) {
+                        try {
+                            BatchBookingResult result = context.bookBatch(batch.modes, batch.distances, batch.members, batch.size);
+                            stats.accepted += result.getAcceptedCount();
+                            stats.rejected += result.getRejectedCount();
+                            if (result.getFailure() != null) {
+                                failure.set(result.getFailure());
+                            }
+                        } catch (RuntimeException | Error e) {
+                            failure.set(e);
+                        }
+                    }
+                    batch.size = 0;
+                    free.put(batch);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "booking-ingest");
+        booker.start();
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+            byte[] line = new byte[MAX_LINE_LENGTH];
+            int lineLength = 0;
+            boolean overflow = false;
+            Batch batch = free.take();
+            while (channel.read(buffer) != -1) {
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    byte b = buffer.get();
+                    if (b == '\n') {
+                        if (overflow) {
+                            stats.malformed++;
+                        } else {
+                            batch = parseLine(line, lineLength, batch, stats, full, free);
+                            if (failure.get() != null) {
+                                break;
+                            }
+                        }
+                        lineLength = 0;
+                        overflow = false;
+                    } else if (lineLength < line.length) {
+                        line[lineLength++] = b;
+                    } else {
+                        overflow = true;
+                    }
+                }
+                buffer.clear();
+                if (failure.get() != null) {
+                    break;
+                }
+            }
+            if (lineLength > 0 && !overflow && failure.get() == null) {
+                batch = parseLine(line, lineLength, batch, stats, full, free);
+            }
+            if (batch.size > 0) {
+                full.put(batch);
+            }
+        } finally {
+            full.put(endOfInput);
+            booker.join();
+        }
+        if (failure.get() != null) {
+            throw new IOException("Booking failed after " + stats.accepted + " accepted rows: " + failure.get(), failure.get());
+        }
+        stats.elapsedNanos = System.nanoTime() - start;
+        return stats;
+    }
+
+    private Batch parseLine(byte[] line, int length, Batch batch, Stats stats,
+                            BlockingQueue<Batch> full, BlockingQueue<Batch> free) throws InterruptedException {
+        int start = 0;
+        while (start < length && isBlank(line[start])) {
+            start++;
+        }
+        int end = length;
+        while (end > start && isBlank(line[end - 1])) {
+            end--;
+        }
+        if (start == end || line[start] == '#') {
+            return batch;
+        }
+        if (stats.rows == 0 && stats.malformed == 0 && line[start] != '{' && !isDigit(line[start])) {
+            return batch; // CSV header
+        }
+        stats.rows++;
+
+        int row = batch.size;
+        boolean parsed = line[start] == '{'
+                ? parseJson(line, start, end, batch, row)
+                : parseCsv(line, start, end, batch, row);
+        if (!parsed) {
+            stats.malformed++;
+            return batch;
+        }
+        batch.size++;
+        if (batch.size == batchSize) {
+            full.put(batch);
+            return free.take();
+        }
+        return batch;
+    }
+
+    private boolean parseCsv(byte[] line, int start, int end, Batch batch, int row) {
+        int firstComma = indexOf(line, (byte) ',', start, end);
+        int secondComma = firstComma < 0 ? -1 : indexOf(line, (byte) ',', firstComma + 1, end);
+        if (secondComma < 0) {
+            return false;
+        }
+        int distance = parseInt(line, start, firstComma);
+        int members = parseInt(line, firstComma + 1, secondComma);
+        TravelStrategy mode = matchMode(line, secondComma + 1, end);
+        return store(batch, row, mode, distance, members);
+    }
+
+    private boolean parseJson(byte[] line, int start, int end, Batch batch, int row) {
+        int distance = parseInt(line, valueStart(line, DISTANCE_KEY, start, end), end);
+        int members = parseInt(line, valueStart(line, MEMBERS_KEY, start, end), end);
+        int modeStart = valueStart(line, MODE_KEY, start, end);
+        if (modeStart < 0 || modeStart >= end || line[modeStart] != '"') {
+            return false;
+        }
+        int modeEnd = indexOf(line, (byte) '"', modeStart + 1, end);
+        if (modeEnd < 0) {
+            return false;
+        }
+        return store(batch, row, matchMode(line, modeStart + 1, modeEnd), distance, members);
+    }
+
+    private static boolean store(Batch batch, int row, TravelStrategy mode, int distance, int members) {
+        if (mode == null || distance < 0 || members < 0) {
+            return false;
+        }
+        batch.modes[row] = mode;
+        batch.distances[row] = distance;
+        batch.members[row] = members;
+        return true;
+    }
+
+    private TravelStrategy matchMode(byte[] line, int start, int end) {
+        while (start < end && isBlank(line[start])) {
+            start++;
+        }
+        while (end > start && isBlank(line[end - 1])) {
+            end--;
+        }
+        for (int i = 0; i < modeNames.length; i++) {
+            if (Arrays.equals(line, start, end, modeNames[i], 0, modeNames[i].length)) {
+                return modes[i];
+            }
+        }
+        return null;
+    }
+
+    // Position of the first non-blank byte after "key": or -1
+    private static int valueStart(byte[] line, byte[] key, int start, int end) {
+        for (int i = start; i + key.length <= end; i++) {
+            if (Arrays.equals(line, i, i + key.length, key, 0, key.length)) {
+                int pos = i + key.length;
+                while (pos < end && isBlank(line[pos])) {
+                    pos++;
+                }
+                if (pos == end || line[pos] != ':') {
+                    return -1;
+                }
+                pos++;
+                while (pos < end && isBlank(line[pos])) {
+                    pos++;
+                }
+                return pos;
+            }
+        }
+        return -1;
+    }
+
+    // Parses the leading digits of line[start, end); returns -1 when there are none
+    private static int parseInt(byte[] line, int start, int end) {
+        if (start < 0) {
+            return -1;
+        }
+        while (start < end && isBlank(line[start])) {
+            start++;
+        }
+        long value = 0;
+        int digits = 0;
+        while (start < end && isDigit(line[start]) && value <= Integer.MAX_VALUE) {
+            value = value * 10 + (line[start++] - '0');
+            digits++;
+        }
+        while (start < end && isBlank(line[start])) {
+            start++;
+        }
+        boolean terminated = start == end || line[start] == ',' || line[start] == '}';
+        return digits > 0 && terminated && value <= Integer.MAX_VALUE ? (int) value : -1;
+    }
+
+    private static int indexOf(byte[] line, byte target, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (line[i] == target) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    private static boolean isBlank(byte b) {
+        return b == ' ' || b == '\t' || b == '\r';
+    }
+}
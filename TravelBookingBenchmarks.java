@@ -0,0 +1,163 @@
+// Runnable micro-benchmarks for "Travel Booking System.java".
+// javac wants that file saved as TravelBookingSystem.java; compile the two together, then run
+//   java TravelBookingBenchmarks [benchmark ...]
+// Each benchmark warms up before it is measured and reports the best of several rounds. This is a plain main program
+// rather than a JMH harness, so treat the numbers as comparisons between variants on one machine.
+
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+
+public class TravelBookingBenchmarks {
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int MEASURED_ROUNDS = 5;
+
+    interface Benchmark {
+        void run() throws Exception;
+    }
+
+    // One measured operation batch; returns a value derived from the work so it cannot be optimized away
+    interface Workload {
+        double run();
+    }
+
+    static volatile double sink;
+
+    public static void main(String[] args) throws Exception {
+        Map<String, Benchmark> benchmarks = new LinkedHashMap<>();
+        benchmarks.put("quotes", TravelBookingBenchmarks::quotes);
+        benchmarks.put("metrics-overhead", TravelBookingBenchmarks::metricsOverhead);
+
+        List<String> selected = args.length == 0 ? new ArrayList<>(benchmarks.keySet()) : Arrays.asList(args);
+        for (String name : selected) {
+            Benchmark benchmark = benchmarks.get(name);
+            if (benchmark == null) {
+                System.out.println("Unknown benchmark " + name + ". Available: " + benchmarks.keySet());
+                continue;
+            }
+            System.out.println(name + ":");
+            benchmark.run();
+        }
+    }
+
+    // Best operations per second over the measured rounds
+    static double measure(long operationsPerRound, Workload workload) {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            sink += workload.run();
+        }
+        double best = 0;
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            long start = System.nanoTime();
+            sink += workload.run();
+            long elapsed = System.nanoTime() - start;
+            best = Math.max(best, operationsPerRound * 1e9 / elapsed);
+        }
+        return best;
+    }
+
+    static void report(String label, double operationsPerSecond, String unit) {
+        System.out.printf("  %-44s %,16.0f %s/s%n", label, operationsPerSecond, unit);
+    }
+
+    // Pricing a batch into an array: calculateAmount per row vs. one quoteAll call. The batch stays in cache and
+    // is priced many times per round, so the figures compare the pricing loops rather than memory bandwidth.
+    static void quotes() {
+        int count = 4096;
+        int passes = 256;
+        int[] distances = new int[count];
+        int[] members = new int[count];
+        double[] amounts = new double[count];
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < count; i++) {
+            distances[i] = random.nextInt(3000);
+            members[i] = 1 + random.nextInt(12);
+        }
+
+        FareTable banded = FareTable.builder(20.0)
+                .distanceBand(500, 15.0)
+                .distanceBand(1500, 11.0)
+                .groupDiscount(4, 0.05)
+                .groupDiscount(10, 0.12)
+                .surchargePerMember(3.5)
+                .build();
+        TravelStrategy flight = new FlightStrategy();
+        long quotesPerRound = (long) count * passes;
+
+        report("flat fares, scalar calculateAmount", measure(quotesPerRound, () -> {
+            for (int pass = 0; pass < passes; pass++) {
+                for (int i = 0; i < count; i++) {
+                    amounts[i] = flight.calculateAmount(distances[i], members[i]);
+                }
+            }
+            return amounts[count - 1];
+        }), "quotes");
+        report("flat fares, bulk quoteAll", measure(quotesPerRound, () -> {
+            for (int pass = 0; pass < passes; pass++) {
+                flight.quoteAll(distances, members, amounts, count);
+            }
+            return amounts[count - 1];
+        }), "quotes");
+        report("banded fares, scalar quote", measure(quotesPerRound, () -> {
+            for (int pass = 0; pass < passes; pass++) {
+                for (int i = 0; i < count; i++) {
+                    amounts[i] = banded.quote(distances[i], members[i]);
+                }
+            }
+            return amounts[count - 1];
+        }), "quotes");
+        report("banded fares, bulk quoteAll", measure(quotesPerRound, () -> {
+            for (int pass = 0; pass < passes; pass++) {
+                banded.quoteAll(distances, members, amounts, count);
+            }
+            return amounts[count - 1];
+        }), "quotes");
+    }
+
+    // Book + cancel round trips with metrics off and on, on one thread and on several
+    static void metricsOverhead() throws InterruptedException {
+        int roundTrips = 200_000;
+        TravelStrategy train = new TrainStrategy();
+        for (boolean withMetrics : new boolean[]{false, true}) {
+            TravelContext context = new TravelContext();
+            if (withMetrics) {
+                context.setMetrics(new BookingMetrics());
+            }
+            double single = measure(roundTrips, () -> bookAndCancel(context, train, roundTrips));
+            report((withMetrics ? "metrics on" : "metrics off") + ", 1 thread", single, "round trips");
+        }
+        int threads = 4;
+        for (boolean withMetrics : new boolean[]{false, true}) {
+            TravelContext context = new TravelContext();
+            if (withMetrics) {
+                context.setMetrics(new BookingMetrics());
+            }
+            double best = 0;
+            for (int round = 0; round < WARMUP_ROUNDS + MEASURED_ROUNDS; round++) {
+                Thread[] workers = new Thread[threads];
+                long start = System.nanoTime();
+                for (int t = 0; t < threads; t++) {
+                    workers[t] = new Thread(() -> sink += bookAndCancel(context, train, roundTrips / threads));
+                    workers[t].start();
+                }
+                for (Thread worker : workers) {
+                    worker.join();
+                }
+                if (round >= WARMUP_ROUNDS) {
+                    best = Math.max(best, roundTrips * 1e9 / (System.nanoTime() - start));
+                }
+            }
+            report((withMetrics ? "metrics on" : "metrics off") + ", " + threads + " threads", best, "round trips");
+        }
+    }
+
+    private static double bookAndCancel(TravelContext context, TravelStrategy strategy, int roundTrips) {
+        double booked = 0;
+        for (int i = 0; i < roundTrips; i++) {
+            long id = context.tryBook(strategy, 100 + (i & 255), 1 + (i & 3));
+            if (id != 0) {
+                booked++;
+                context.tryCancel(id);
+            }
+        }
+        return booked;
+    }
+}
@@ -0,0 +1,545 @@
+// Runnable stress and regression checks for "Travel Booking System.java".
+// javac wants that file saved as TravelBookingSystem.java; compile the two together, then run
+//   java TravelBookingChecks [check ...]
+// With no arguments every check runs. Any failed check makes the program exit with status 1.
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TravelBookingChecks {
+
+    interface Check {
+        void run() throws Exception;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, Check> checks = new LinkedHashMap<>();
+        checks.put("seat-stress", TravelBookingChecks::seatStress);
+        checks.put("sentinel-keys", TravelBookingChecks::sentinelKeys);
+        checks.put("ingest-failure", TravelBookingChecks::ingestFailure);
+        checks.put("invalid-input", TravelBookingChecks::invalidInput);
+        checks.put("bulk-quotes", TravelBookingChecks::bulkQuotes);
+        checks.put("paging", TravelBookingChecks::paging);
+        checks.put("journal-failure", TravelBookingChecks::journalFailure);
+        checks.put("journal-segments", TravelBookingChecks::journalSegments);
+        checks.put("waitlist-withdraw-race", TravelBookingChecks::waitlistWithdrawRace);
+        checks.put("waitlist-churn", TravelBookingChecks::waitlistChurn);
+        checks.put("waitlist-first", TravelBookingChecks::waitlistFirst);
+
+        List<String> selected = args.length == 0 ? new ArrayList<>(checks.keySet()) : Arrays.asList(args);
+        int failed = 0;
+        for (String name : selected) {
+            Check check = checks.get(name);
+            if (check == null) {
+                System.out.println("Unknown check " + name + ". Available: " + checks.keySet());
+                failed++;
+                continue;
+            }
+            long start = System.nanoTime();
+            try {
+                check.run();
+                System.out.printf("PASSED %s (%.2f s)%n", name, (System.nanoTime() - start) / 1e9);
+            } catch (AssertionError | Exception e) {
+                System.out.println("FAILED " + name + ": " + e);
+                failed++;
+            }
+        }
+        if (failed > 0) {
+            System.exit(1);
+        }
+    }
+
+    static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+
+    // Runs the task on every thread at once and waits for all of them
+    static void runConcurrently(int threads, java.util.function.IntConsumer task) throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        Throwable[] failure = new Throwable[1];
+        for (int t = 0; t < threads; t++) {
+            int index = t;
+            Thread worker = new Thread(() -> {
+                try {
+                    start.await();
+                    task.accept(index);
+                } catch (Throwable e) {
+                    synchronized (failure) {
+                        failure[0] = e;
+                    }
+                }
+            });
+            workers.add(worker);
+            worker.start();
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        if (failure[0] != null) {
+            throw new AssertionError("Worker failed: " + failure[0], failure[0]);
+        }
+    }
+
+    // Tens of thousands of parallel bookings never oversell, and the final seat count is exact
+    static void seatStress() throws Exception {
+        TravelStrategy[] modes = {new BusStrategy(), new TrainStrategy(), new FlightStrategy()};
+        int threads = 16;
+        int attemptsPerThread = 5000;
+
+        // Sell out: every single-seat attempt races for the same inventory
+        TravelContext soldOut = new TravelContext();
+        long[] accepted = new long[threads * modes.length];
+        runConcurrently(threads, t -> {
+            for (int i = 0; i < attemptsPerThread; i++) {
+                int mode = i % modes.length;
+                if (soldOut.tryBook(modes[mode], 10, 1) != 0) {
+                    accepted[t * modes.length + mode]++;
+                }
+            }
+        });
+        for (int mode = 0; mode < modes.length; mode++) {
+            long sold = 0;
+            for (int t = 0; t < threads; t++) {
+                sold += accepted[t * modes.length + mode];
+            }
+            TravelStrategy strategy = modes[mode];
+            check(sold == strategy.getMaxSeats(), strategy.getBookingType() + ": sold " + sold + " of " + strategy.getMaxSeats());
+            check(soldOut.availableSeats(strategy) == 0, strategy.getBookingType() + ": " + soldOut.availableSeats(strategy) + " seats left after selling out");
+            check(soldOut.countBookings(strategy.getBookingType()) == sold, strategy.getBookingType() + ": booking count differs from seats sold");
+        }
+
+        // Churn: groups of 1-4 book and cancel concurrently; live bookings plus free seats must equal capacity
+        TravelContext churn = new TravelContext();
+        long[][] liveSeats = new long[threads][modes.length];
+        runConcurrently(threads, t -> {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            ArrayDeque<long[]> mine = new ArrayDeque<>();
+            for (int i = 0; i < attemptsPerThread; i++) {
+                if (!mine.isEmpty() && random.nextInt(3) == 0) {
+                    long[] booking = mine.pollFirst();
+                    check(churn.tryCancel(booking[0]), "cancel of live booking " + booking[0] + " failed");
+                    liveSeats[t][(int) booking[1]] -= booking[2];
+                    continue;
+                }
+                int mode = random.nextInt(modes.length);
+                int members = 1 + random.nextInt(4);
+                long id = churn.tryBook(modes[mode], 1 + random.nextInt(500), members);
+                if (id != 0) {
+                    mine.addLast(new long[]{id, mode, members});
+                    liveSeats[t][mode] += members;
+                }
+                check(churn.availableSeats(modes[mode]) >= 0, "negative seat count");
+            }
+        });
+        for (int mode = 0; mode < modes.length; mode++) {
+            long live = 0;
+            for (int t = 0; t < threads; t++) {
+                live += liveSeats[t][mode];
+            }
+            TravelStrategy strategy = modes[mode];
+            check(live + churn.availableSeats(strategy) == strategy.getMaxSeats(),
+                    strategy.getBookingType() + ": " + live + " seats booked + " + churn.availableSeats(strategy) + " free != " + strategy.getMaxSeats());
+        }
+        System.out.println("  " + threads * attemptsPerThread * 2 + " concurrent booking attempts, seat counts exact");
+    }
+
+    // 0 and -1 are the map's free and deleted markers and must never match a lookup
+    static void sentinelKeys() {
+        LongKeyMap<String> map = new LongKeyMap<>();
+        for (long key = 1; key <= 3; key++) {
+            map.put(key, "v" + key);
+        }
+        for (long key : new long[]{0, -1, -2, Long.MIN_VALUE}) {
+            check(map.get(key) == null && !map.containsKey(key) && map.remove(key) == null, "key " + key + " was found");
+        }
+        check(map.size() == 3, "size changed to " + map.size());
+        List<String> seen = new ArrayList<>();
+        map.forEach(seen::add);
+        check(seen.equals(Arrays.asList("v1", "v2", "v3")), "iteration order broken: " + seen);
+
+        TravelContext context = new TravelContext();
+        TravelStrategy bus = new BusStrategy();
+        for (int i = 0; i < 3; i++) {
+            context.tryBook(bus, 10, 1);
+        }
+        check(!context.tryCancel(0) && !context.tryCancel(-1), "cancelled a booking with a sentinel id");
+        check(context.countBookings(null) == 3, "booking count dropped to " + context.countBookings(null));
+    }
+
+    // A booking failure on the ingest consumer thread surfaces as an exception instead of hanging the parser
+    static void ingestFailure() throws Exception {
+        Path file = Files.createTempFile("ingest-failure", ".csv");
+        try {
+            StringBuilder rows = new StringBuilder("distance,members,mode\n");
+            for (int i = 0; i < 20000; i++) {
+                rows.append(10 + i % 90).append(",1,").append(i < 100 ? "Train" : "Broken").append('\n');
+            }
+            Files.write(file, rows.toString().getBytes(StandardCharsets.US_ASCII));
+            Map<String, TravelStrategy> strategies = new HashMap<>();
+            strategies.put("Train", new TrainStrategy());
+            strategies.put("Broken", new TrainStrategy() {
+                @Override
+                public String getBookingType() {
+                    return "Broken";
+                }
+
+                @Override
+                public double calculateAmount(int distance, int numberOfMembers) {
+                    throw new IllegalStateException("pricing unavailable");
+                }
+            });
+            BookingIngest ingest = new BookingIngest(new TravelContext(), strategies, 16, 2);
+            Throwable[] outcome = new Throwable[1];
+            Thread runner = new Thread(() -> {
+                try {
+                    ingest.ingest(file);
+                } catch (Throwable e) {
+                    outcome[0] = e;
+                }
+            });
+            runner.setDaemon(true);
+            runner.start();
+            runner.join(10_000);
+            check(!runner.isAlive(), "ingest hung after the booking thread failed");
+            check(outcome[0] instanceof IOException, "expected an IOException, got " + outcome[0]);
+            check(outcome[0].getCause() instanceof IllegalStateException, "cause was not kept: " + outcome[0].getCause());
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    // Negative distances or group sizes are rejected before any seat is reserved
+    static void invalidInput() {
+        TravelContext context = new TravelContext();
+        TravelStrategy[] modes = {new BusStrategy(), new TrainStrategy(), new FlightStrategy()};
+        for (TravelStrategy mode : modes) {
+            check(context.tryBook(mode, -5, 10) == 0 && context.tryBook(mode, 10, -5) == 0 && context.tryBook(mode, 10, 0) == 0,
+                    mode.getBookingType() + ": invalid booking accepted");
+            check(context.availableSeats(mode) == mode.getMaxSeats(), mode.getBookingType() + ": invalid booking held seats");
+            check(context.tryBook(mode, 7L, -1, 2) == 0, mode.getBookingType() + ": invalid departure booking accepted");
+            check(context.availableSeats(mode, 7L) == mode.getMaxSeats(), mode.getBookingType() + ": invalid departure booking held seats");
+        }
+        check(context.countBookings(null) == 0, "bookings were created");
+        FareQuoter quoter = new FareQuoter(context, Arrays.asList(modes));
+        for (int[] request : new int[][]{{-5, 2}, {10, 0}, {10, -3}}) {
+            try {
+                quoter.quote(request[0], request[1]);
+                throw new AssertionError("quoted distance " + request[0] + " for " + request[1] + " members");
+            } catch (IllegalArgumentException expected) {
+                // the CLI checks isValidRequest first and prints the usual message
+            }
+        }
+
+        TravelStrategy flight = modes[2];
+        BatchBookingResult batch = context.bookBatch(new TravelStrategy[]{flight, flight, flight, flight},
+                new int[]{100, -1, 200, 300}, new int[]{2, 3, -4, 5});
+        check(batch.isAccepted(0) && !batch.isAccepted(1) && !batch.isAccepted(2) && batch.isAccepted(3),
+                "batch should reject only the invalid rows");
+        check(context.availableSeats(flight) == flight.getMaxSeats() - 7,
+                "batch left " + context.availableSeats(flight) + " flight seats, expected " + (flight.getMaxSeats() - 7));
+    }
+
+    // quoteAll prices every row exactly as quote does, inside the tables and beyond them
+    static void bulkQuotes() {
+        FareTable banded = FareTable.builder(20.0)
+                .distanceBand(500, 15.0)
+                .groupDiscount(4, 0.05)
+                .surchargePerMember(3.5)
+                .tableSize(1000, 16)
+                .build();
+        int count = 2000;
+        int[] distances = new int[count];
+        int[] members = new int[count];
+        double[] amounts = new double[count];
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < count; i++) {
+            distances[i] = random.nextInt(1001);
+            members[i] = random.nextInt(17);
+        }
+        for (boolean beyondTables : new boolean[]{false, true}) {
+            if (beyondTables) {
+                distances[count / 2] = 5000;
+                members[count / 3] = 40;
+            }
+            banded.quoteAll(distances, members, amounts, count);
+            for (int i = 0; i < count; i++) {
+                check(amounts[i] == banded.quote(distances[i], members[i]), "row " + i + " priced " + amounts[i] + " in bulk");
+            }
+        }
+        members[7] = -1;
+        try {
+            banded.quoteAll(distances, members, amounts, count);
+            throw new AssertionError("negative group size was priced");
+        } catch (IllegalArgumentException expected) {
+            // rejected by the row-by-row fallback
+        }
+    }
+
+    // Pages are bounded, and a cursor still resumes in order after its booking is cancelled
+    static void paging() throws IOException {
+        TravelContext context = new TravelContext();
+        TravelStrategy train = new TrainStrategy();
+        for (int i = 0; i < 1000; i++) {
+            context.tryBook(train, 10 + i, 1);
+        }
+        for (int pageSize : new int[]{0, -1}) {
+            try {
+                new BookingQuery().pageSize(pageSize);
+                check(false, "page size " + pageSize + " accepted");
+            } catch (IllegalArgumentException expected) {
+                // rejected as intended
+            }
+        }
+        StringBuilder page = new StringBuilder();
+        context.listBookings(new BookingQuery().pageSize(Integer.MAX_VALUE), page);
+        check(lines(page) == BookingQuery.MAX_PAGE_SIZE, "oversized page returned " + lines(page) + " bookings");
+
+        BookingQuery query = new BookingQuery().pageSize(10);
+        page.setLength(0);
+        long cursor = context.listBookings(query, page);
+        check(cursor == 10, "first page ended at " + cursor);
+        context.tryCancel(10);
+        page.setLength(0);
+        cursor = context.listBookings(query.after(cursor), page);
+        check(page.toString().startsWith("Booking ID: 11,") && cursor == 20, "resume after a cancelled cursor went wrong: " + cursor);
+        for (long id = 20; id <= 300; id++) {
+            context.tryCancel(id);
+        }
+        page.setLength(0);
+        cursor = context.listBookings(query.after(cursor), page);
+        check(page.toString().startsWith("Booking ID: 301,") && cursor == 310, "resume past a long cancelled run went wrong: " + cursor);
+    }
+
+    static int lines(CharSequence text) {
+        int count = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == '\n') {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    // A journal that refuses a record leaves bookings, indexes and seat counts exactly as they were
+    static void journalFailure() throws Exception {
+        Path file = Files.createTempFile("journal-failure", ".tbj");
+        List<TravelStrategy> strategies = List.of(new BusStrategy(), new TrainStrategy(), new FlightStrategy());
+        TravelStrategy bus = strategies.get(0);
+        try {
+            TravelContext context = new TravelContext();
+            BookingJournal journal = new BookingJournal(file, strategies);
+            context.recover(journal);
+            long booked = context.tryBook(bus, 100, 2);
+            check(booked != 0, "booking before the failure was refused");
+            journal.close();
+
+            int available = context.availableSeats(bus);
+            expectJournalException(() -> context.tryBook(bus, 100, 3), "tryBook");
+            check(context.availableSeats(bus) == available, "refused booking kept its seats");
+            expectJournalException(() -> context.tryBook(bus, 9L, 100, 3), "departure tryBook");
+            check(context.availableSeats(bus, 9L) == bus.getMaxSeats(), "refused departure booking kept its seats");
+            expectJournalException(() -> context.tryCancel(booked), "tryCancel");
+            check(context.findBooking(booked) != null, "refused cancellation removed the booking");
+            check(context.availableSeats(bus) == available, "refused cancellation released seats");
+            check(context.countBookings(null) == 1, context.countBookings(null) + " bookings in the index, expected 1");
+
+            BatchBookingResult batch = context.bookBatch(new TravelStrategy[]{bus, bus}, new int[]{10, 20}, new int[]{1, 2});
+            check(batch.getFailure() instanceof BookingJournal.JournalException, "batch did not report the journal failure");
+            check(batch.getAcceptedCount() == 0 && context.availableSeats(bus) == available, "refused batch rows kept seats");
+
+            // The booking made before the failure is all that survives a restart
+            TravelContext restarted = new TravelContext();
+            try (BookingJournal reopened = new BookingJournal(file, strategies)) {
+                restarted.recover(reopened);
+                check(restarted.countBookings(null) == 1 && restarted.findBooking(booked) != null, "journal does not match what was acknowledged");
+                check(restarted.tryBook(bus, 50, 1) == booked + 1, "booking ids are not consecutive after refused bookings");
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    static void expectJournalException(Runnable action, String name) {
+        try {
+            action.run();
+        } catch (BookingJournal.JournalException e) {
+            return;
+        }
+        throw new AssertionError(name + " succeeded against a closed journal");
+    }
+
+    // A journal spanning many mapped segments replays completely; small segments stand in for the default size
+    static void journalSegments() throws Exception {
+        Path file = Files.createTempFile("journal-segments", ".tbj");
+        List<TravelStrategy> strategies = List.of(new BusStrategy(), new TrainStrategy(), new FlightStrategy());
+        TravelStrategy train = strategies.get(1);
+        int segmentRecords = 1000;
+        int rounds = 30_000;
+        try {
+            TravelContext context = new TravelContext();
+            long last = 0;
+            try (BookingJournal journal = new BookingJournal(file, strategies, segmentRecords)) {
+                context.recover(journal);
+                for (int i = 0; i < rounds; i++) {
+                    last = context.tryBook(train, 100 + i, 1);
+                    if (i % 1000 != 0) {
+                        context.tryCancel(last);
+                    }
+                }
+            }
+            int live = rounds / 1000;
+            TravelContext restarted = new TravelContext();
+            BookingJournal.RecoveryStats stats;
+            try (BookingJournal reopened = new BookingJournal(file, strategies, segmentRecords)) {
+                stats = restarted.recover(reopened);
+                check(restarted.tryBook(train, 10, 1) == last + 1, "booking ids restart below the journal's last id");
+            }
+            check(stats.bookEvents == rounds && stats.cancelEvents == rounds - live, "replayed " + stats);
+            check(restarted.countBookings(null) == live + 1, restarted.countBookings(null) + " bookings after replay, expected " + (live + 1));
+            check(restarted.availableSeats(train) == train.getMaxSeats() - live - 1, "seat count off after replay");
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    // Waits until the promoter has nothing left to do: no free seats or nobody waiting, stable for a moment
+    static void awaitPromotions(TravelContext context, BookingWaitlist waitlist, TravelStrategy strategy) throws InterruptedException {
+        long deadline = System.nanoTime() + 10_000_000_000L;
+        int stable = 0;
+        while (stable < 5) {
+            check(System.nanoTime() < deadline, "waitlist promotions did not settle");
+            boolean idle = context.availableSeats(strategy) < 1 || waitlist.size(strategy.getBookingType()) == 0;
+            stable = idle ? stable + 1 : 0;
+            Thread.sleep(20);
+        }
+    }
+
+    // Withdrawing while the promoter is booking never leaves a live booking behind a cancelled future
+    static void waitlistWithdrawRace() throws Exception {
+        TravelContext context = new TravelContext();
+        BookingWaitlist waitlist = new BookingWaitlist(context);
+        context.setWaitlist(waitlist);
+        TravelStrategy flight = new FlightStrategy();
+        List<Long> seated = new ArrayList<>();
+        for (int i = 0; i < flight.getMaxSeats(); i++) {
+            seated.add(context.tryBook(flight, 100, 1));
+        }
+        List<BookingWaitlist.Entry> entries = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            entries.add(waitlist.enqueue(flight, 100, 1, 0));
+        }
+        runConcurrently(2, t -> {
+            if (t == 0) {
+                for (long id : seated) {
+                    context.tryCancel(id);
+                }
+            } else {
+                for (int i = 0; i < entries.size(); i += 2) {
+                    waitlist.withdraw(entries.get(i).getTicket());
+                }
+            }
+        });
+        awaitPromotions(context, waitlist, flight);
+
+        int promoted = 0;
+        for (BookingWaitlist.Entry entry : entries) {
+            CompletableFuture<Long> booking = entry.getBooking();
+            if (booking.isDone() && !booking.isCancelled()) {
+                promoted++;
+                check(context.findBooking(booking.join()) != null, "promoted booking " + booking.join() + " is not live");
+            }
+        }
+        int live = context.countBookings(null);
+        check(live == promoted, live + " live bookings but " + promoted + " completed promotions");
+        check(live + context.availableSeats(flight) == flight.getMaxSeats(), "seat count off after the race");
+        waitlist.shutdown();
+    }
+
+    // Promotion latency while bookings are cancelled as fast as the waitlist refills them
+    static void waitlistChurn() throws Exception {
+        TravelContext context = new TravelContext();
+        BookingMetrics metrics = new BookingMetrics();
+        BookingWaitlist waitlist = new BookingWaitlist(context);
+        context.setMetrics(metrics);
+        context.setWaitlist(waitlist);
+        metrics.setWaitlist(waitlist);
+        TravelStrategy bus = new BusStrategy();
+        BlockingQueue<Long> toCancel = new LinkedBlockingQueue<>();
+        long id;
+        while ((id = context.tryBook(bus, 50, 1)) != 0) {
+            toCancel.add(id);
+        }
+        int seated = toCancel.size();
+        int waiting = 20_000;
+        for (int i = 0; i < waiting; i++) {
+            waitlist.enqueue(bus, 50, 1 + (i & 1), i % 3).getBooking().thenAccept(toCancel::add);
+        }
+        // Every promoted booking is cancelled again as soon as it lands, which in turn promotes the next party
+        int cancellers = 4;
+        AtomicInteger claimed = new AtomicInteger();
+        runConcurrently(cancellers, t -> {
+            try {
+                while (claimed.getAndIncrement() < seated + waiting) {
+                    Long bookingId = toCancel.poll(10, TimeUnit.SECONDS);
+                    check(bookingId != null, "promotions stalled with " + waitlist.size(bus.getBookingType()) + " parties waiting");
+                    check(context.tryCancel(bookingId), "promoted booking " + bookingId + " was not live");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        awaitPromotions(context, waitlist, bus);
+
+        LatencyHistogram latency = waitlist.getPromotionLatency();
+        check(latency.getCount() == waiting, latency.getCount() + " promotions recorded, expected " + waiting);
+        check(waitlist.size(bus.getBookingType()) == 0, "parties still waiting");
+        check(metrics.snapshot().contains("promotion_latency.count=" + waiting), "promotion latency missing from the metrics snapshot");
+        System.out.printf("  %d promotions under cancel churn: p50 %d us, p99 %d us, p99.9 %d us%n", waiting,
+                latency.valueAtQuantile(0.50) / 1000, latency.valueAtQuantile(0.99) / 1000, latency.valueAtQuantile(0.999) / 1000);
+        waitlist.shutdown();
+    }
+
+    // Seats freed while a party is waiting go to that party, not to whoever books next
+    static void waitlistFirst() throws Exception {
+        TravelContext context = new TravelContext();
+        BookingWaitlist waitlist = new BookingWaitlist(context);
+        context.setWaitlist(waitlist);
+        TravelStrategy bus = new BusStrategy();
+        List<Long> seated = new ArrayList<>();
+        long id;
+        while ((id = context.tryBook(bus, 50, 1)) != 0) {
+            seated.add(id);
+        }
+        BookingWaitlist.Entry party = waitlist.enqueue(bus, 50, 2, 0);
+
+        context.tryCancel(seated.get(0));
+        check(context.tryBook(bus, 50, 1) == 0, "a new caller took a seat freed for the waitlist");
+        check(!context.isAvailable(bus, 1), "seats reported available while a party is waiting");
+        BatchBookingResult batch = context.bookBatch(new TravelStrategy[]{bus}, new int[]{50}, new int[]{1});
+        check(batch.getAcceptedCount() == 0, "a batch row took a seat freed for the waitlist");
+
+        context.tryCancel(seated.get(1));
+        long promoted = party.getBooking().get(10, TimeUnit.SECONDS);
+        check(context.findBooking(promoted) != null, "promoted booking is not live");
+        check(party.describe().endsWith("booked with Booking ID " + promoted), party.describe());
+        check(!waitlist.hasWaiting(bus), "the waitlist still counts the promoted party");
+
+        context.tryCancel(seated.get(2));
+        check(context.tryBook(bus, 50, 1) != 0, "booking refused after the waitlist emptied");
+        waitlist.shutdown();
+    }
+}
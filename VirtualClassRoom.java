@@ -1,182 +1,2053 @@
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 public class VirtualClassroomManager {
 
+    // Console logging by default. useAsyncFile switches to a bounded ring buffer drained by one writer thread,
+    // which formats events in batches and writes them to a file channel. "{}" placeholders are only
+    // formatted when the level is enabled, and in async mode they are formatted on the writer thread.
     public static class Logger {
+        public enum Level { DEBUG, INFO, WARN, ERROR }
+
+        private static final int BATCH_SIZE = 1024;
+
+        private static volatile Level threshold = Level.INFO;
+        private static volatile AsyncWriter writer;
+
+        public static void setLevel(Level level) {
+            threshold = level;
+        }
+
+        public static boolean isEnabled(Level level) {
+            return level.compareTo(threshold) >= 0;
+        }
+
         public static void log(String message) {
-            System.out.println(message);
+            log(Level.INFO, message, null, null, null);
+        }
+
+        public static void info(String pattern, Object arg) {
+            log(Level.INFO, pattern, arg, null, null);
+        }
+
+        public static void info(String pattern, Object first, Object second) {
+            log(Level.INFO, pattern, first, second, null);
+        }
+
+        public static void info(String pattern, Object first, Object second, Object third) {
+            log(Level.INFO, pattern, first, second, third);
+        }
+
+        public static void log(Level level, String pattern, Object first, Object second, Object third) {
+            if (!isEnabled(level)) {
+                return;
+            }
+            AsyncWriter current = writer;
+            if (current != null) {
+                current.enqueue(new LogEvent(level, pattern, first, second, third));
+            } else {
+                StringBuilder out = new StringBuilder(pattern.length() + 32);
+                format(out, pattern, first, second, third);
+                System.out.println(out);
+            }
+        }
+
+        static void format(StringBuilder out, String pattern, Object first, Object second, Object third) {
+            int argument = 0;
+            int from = 0;
+            int at;
+            while (argument < 3 && (at = pattern.indexOf("{}", from)) >= 0) {
+                out.append(pattern, from, at).append(argument == 0 ? first : argument == 1 ? second : third);
+                argument++;
+                from = at + 2;
+            }
+            out.append(pattern, from, pattern.length());
+        }
+
+        public static void useAsyncFile(Path file, int capacity) throws IOException {
+            AsyncWriter previous = writer;
+            writer = new AsyncWriter(FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND), capacity);
+            if (previous != null) {
+                previous.close();
+            }
+        }
+
+        // Blocks until everything logged so far has been written
+        public static void flush() {
+            AsyncWriter current = writer;
+            if (current != null) {
+                current.flush();
+            }
+        }
+
+        public static void useConsole() {
+            AsyncWriter previous = writer;
+            writer = null;
+            if (previous != null) {
+                previous.close();
+            }
+        }
+
+        private static class LogEvent {
+            final Level level;
+            final String pattern;
+            final Object first;
+            final Object second;
+            final Object third;
+            final CountDownLatch written;
+
+            LogEvent(Level level, String pattern, Object first, Object second, Object third) {
+                this(level, pattern, first, second, third, null);
+            }
+
+            LogEvent(Level level, String pattern, Object first, Object second, Object third, CountDownLatch written) {
+                this.level = level;
+                this.pattern = pattern;
+                this.first = first;
+                this.second = second;
+                this.third = third;
+                this.written = written;
+            }
+        }
+
+        private static class AsyncWriter {
+            private final ArrayBlockingQueue<LogEvent> ring;
+            private final FileChannel channel;
+            private final Thread thread;
+            private volatile boolean running = true;
+
+            AsyncWriter(FileChannel channel, int capacity) {
+                this.ring = new ArrayBlockingQueue<>(capacity);
+                this.channel = channel;
+                this.thread = new Thread(this::drain, "classroom-log-writer");
+                thread.setDaemon(true);
+                thread.start();
+            }
+
+            // A full ring blocks the caller rather than dropping messages
+            void enqueue(LogEvent event) {
+                try {
+                    ring.put(event);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            void flush() {
+                CountDownLatch written = new CountDownLatch(1);
+                enqueue(new LogEvent(Level.INFO, null, null, null, null, written));
+                try {
+                    written.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            void close() {
+                flush();
+                running = false;
+                thread.interrupt();
+                try {
+                    thread.join();
+                    channel.close();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (IOException e) {
+                    System.err.println("Could not close log file: " + e.getMessage());
+                }
+            }
+
+            private void drain() {
+                List<LogEvent> batch = new ArrayList<>(BATCH_SIZE);
+                StringBuilder text = new StringBuilder(BATCH_SIZE * 64);
+                CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+                ByteBuffer bytes = ByteBuffer.allocateDirect(1 << 16);
+                while (running || !ring.isEmpty()) {
+                    try {
+                        if (ring.isEmpty()) {
+                            batch.add(ring.take());
+                        }
+                    } catch (InterruptedException e) {
+                        if (running) {
+                            continue;
+                        }
+                    }
+                    ring.drainTo(batch, BATCH_SIZE - batch.size());
+                    text.setLength(0);
+                    for (LogEvent event : batch) {
+                        if (event.pattern != null) {
+                            text.append(event.level).append(' ');
+                            format(text, event.pattern, event.first, event.second, event.third);
+                            text.append('\n');
+                        }
+                    }
+                    write(text, encoder, bytes);
+                    for (LogEvent event : batch) {
+                        if (event.written != null) {
+                            event.written.countDown();
+                        }
+                    }
+                    batch.clear();
+                }
+            }
+
+            private void write(CharSequence text, CharsetEncoder encoder, ByteBuffer bytes) {
+                try {
+                    CharBuffer chars = CharBuffer.wrap(text);
+                    encoder.reset();
+                    while (true) {
+                        CoderResult result = encoder.encode(chars, bytes, true);
+                        bytes.flip();
+                        while (bytes.hasRemaining()) {
+                            channel.write(bytes);
+                        }
+                        bytes.clear();
+                        if (!result.isOverflow()) {
+                            break;
+                        }
+                    }
+                } catch (IOException e) {
+                    System.err.println("Could not write log file: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    // Each classroom is guarded by its own monitor, so work in different classrooms never contends.
+    // Listing methods return snapshots that stay valid after the lock is released.
+    // Registry updates happen under the same monitor, so they see enrollments and assignments in one order.
+    public static class Classroom {
+        private String name;
+        private ArrayList<Student> roster;
+        private Map<String, Integer> ordinals;
+        private Map<String, Assignment> assignments;
+        private StudentRegistry registry;
+
+        public Classroom(String name) {
+            this(name, null);
+        }
+
+        public Classroom(String name, StudentRegistry registry) {
+            this.name = name;
+            this.roster = new ArrayList<>();
+            this.ordinals = new HashMap<>();
+            this.assignments = new LinkedHashMap<>();
+            this.registry = registry;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        // Returns false, and leaves the roster untouched, if a student with the same id is already enrolled
+        public boolean addStudent(Student student) {
+            boolean added;
+            synchronized (this) {
+                added = enroll(student);
+            }
+            if (added) {
+                Logger.info("Student {} has been enrolled in {}.", student.getName(), name);
+            } else {
+                Logger.info("Student {} is already enrolled in {}.", student.getId(), name);
+            }
+            return added;
+        }
+
+        // Bulk path: one lock acquisition and no per-student log line; returns how many were new
+        public int addStudents(Collection<Student> students) {
+            int added = 0;
+            synchronized (this) {
+                roster.ensureCapacity(roster.size() + students.size());
+                for (Student student : students) {
+                    if (enroll(student)) {
+                        added++;
+                    }
+                }
+            }
+            return added;
+        }
+
+        // Each student gets a dense ordinal in this classroom; submission stores refer to students by it
+        private boolean enroll(Student student) {
+            if (ordinals.containsKey(student.getId())) {
+                return false;
+            }
+            int ordinal = roster.size();
+            roster.add(student);
+            ordinals.put(student.getId(), ordinal);
+            for (Assignment assignment : assignments.values()) {
+                assignment.getSubmissions().enroll(ordinal);
+            }
+            if (registry != null) {
+                registry.enrolled(student.getId(), this, assignments.values());
+            }
+            return true;
+        }
+
+        // Called once the classroom is no longer reachable from the manager; later changes stay out of the registry
+        public synchronized void detach() {
+            if (registry != null) {
+                for (Student student : roster) {
+                    registry.withdrawn(student.getId(), this);
+                }
+                registry = null;
+            }
+        }
+
+        public synchronized List<Student> listStudents() {
+            return new ArrayList<>(roster);
+        }
+
+        public synchronized int studentCount() {
+            return roster.size();
+        }
+
+        public synchronized Student getStudent(String studentId) {
+            Integer ordinal = ordinals.get(studentId);
+            return ordinal != null ? roster.get(ordinal) : null;
+        }
+
+        // Returns false, and keeps the existing assignment, if one with the same details is already scheduled
+        public boolean scheduleAssignment(Assignment assignment) {
+            boolean added = addAssignment(assignment);
+            if (added) {
+                Logger.info("Assignment for {} has been scheduled.", name);
+            } else {
+                Logger.info("Assignment {} already exists in {}.", assignment.getDetails(), name);
+            }
+            return added;
+        }
+
+        synchronized boolean addAssignment(Assignment assignment) {
+            if (assignments.putIfAbsent(assignment.getDetails(), assignment) != null) {
+                return false;
+            }
+            assignment.getSubmissions().enrollAll(roster.size());
+            if (registry != null) {
+                for (Student student : roster) {
+                    registry.assigned(student.getId(), this, assignment);
+                }
+            }
+            return true;
+        }
+
+        // Snapshot restore: keeps the original submission time and ignores whether the assignment has closed since.
+        // The classroom is not registered yet, so the registry learns about the submission in attach().
+        synchronized void restoreSubmission(int ordinal, Assignment assignment, long timestamp, String submissionDetails) {
+            assignment.getSubmissions().record(ordinal, timestamp, submissionDetails);
+        }
+
+        // Snapshot restore: a classroom built off to the side joins the registry once it is published
+        synchronized void attach(StudentRegistry registry) {
+            this.registry = registry;
+            for (Student student : roster) {
+                registry.enrolled(student.getId(), this, assignments.values());
+            }
+            for (Assignment assignment : assignments.values()) {
+                SubmissionStore store = assignment.getSubmissions();
+                for (int row = 0; row < store.submittedCount(); row++) {
+                    registry.submitted(roster.get(store.studentOrdinals[row]).getId(), assignment);
+                }
+            }
+        }
+
+        public synchronized List<Assignment> listAssignments() {
+            return new ArrayList<>(assignments.values());
+        }
+
+        public synchronized Assignment getAssignment(String details) {
+            return assignments.get(details);
+        }
+
+        // Returns false if the assignment is closed, is not this classroom's, or the student is not enrolled here
+        public synchronized boolean recordSubmission(Student student, Assignment assignment, String submissionDetails) {
+            Integer ordinal = ordinals.get(student.getId());
+            if (ordinal == null || assignments.get(assignment.getDetails()) != assignment || assignment.isClosed()) {
+                return false;
+            }
+            assignment.getSubmissions().record(ordinal, System.currentTimeMillis(), submissionDetails);
+            if (registry != null) {
+                registry.submitted(student.getId(), assignment);
+            }
+            return true;
+        }
+
+        public synchronized Submission getSubmission(Student student, Assignment assignment) {
+            Integer ordinal = ordinals.get(student.getId());
+            if (ordinal == null || assignments.get(assignment.getDetails()) != assignment) {
+                return null;
+            }
+            SubmissionStore store = assignment.getSubmissions();
+            int row = store.rowOf(ordinal);
+            return row < 0 ? null : new Submission(student, assignment, store.detailsAt(row), store.submittedOnAt(row));
+        }
+
+        public synchronized List<Student> listSubmitted(Assignment assignment) {
+            List<Student> submitted = new ArrayList<>(assignment.getSubmissions().submittedCount());
+            assignment.getSubmissions().forEachSubmitted(ordinal -> submitted.add(roster.get(ordinal)));
+            return submitted;
+        }
+
+        public synchronized List<Student> listPending(Assignment assignment) {
+            List<Student> pending = new ArrayList<>(assignment.getSubmissions().pendingCount());
+            assignment.getSubmissions().forEachPending(ordinal -> pending.add(roster.get(ordinal)));
+            return pending;
+        }
+    }
+
+    // Per-student view across all classrooms: where the student is enrolled and which assignments they have not
+    // submitted yet. Kept up to date by the classrooms as things change, so a dashboard never scans every classroom.
+    public static class StudentRegistry {
+        private final ConcurrentHashMap<String, StudentRecord> records = new ConcurrentHashMap<>();
+        private final StudentFilter seen;
+
+        public StudentRegistry() {
+            this(1 << 20);
+        }
+
+        public StudentRegistry(int expectedStudents) {
+            this.seen = new StudentFilter(expectedStudents);
+        }
+
+        public static class PendingAssignment {
+            private final Classroom classroom;
+            private final Assignment assignment;
+
+            PendingAssignment(Classroom classroom, Assignment assignment) {
+                this.classroom = classroom;
+                this.assignment = assignment;
+            }
+
+            public Classroom getClassroom() {
+                return classroom;
+            }
+
+            public Assignment getAssignment() {
+                return assignment;
+            }
+        }
+
+        // A student is in a handful of classrooms with a handful of open assignments, so small lists scanned
+        // linearly are both faster and far smaller than per-student hash maps at a million students
+        private static class StudentRecord {
+            private final List<Classroom> enrollments = new ArrayList<>(2);
+            private final List<PendingAssignment> pending = new ArrayList<>(4);
+        }
+
+        private StudentRecord record(String studentId) {
+            return records.computeIfAbsent(studentId, id -> new StudentRecord());
+        }
+
+        void enrolled(String studentId, Classroom classroom, Collection<Assignment> assignments) {
+            seen.add(studentId);
+            StudentRecord record = record(studentId);
+            synchronized (record) {
+                record.enrollments.add(classroom);
+                for (Assignment assignment : assignments) {
+                    record.pending.add(new PendingAssignment(classroom, assignment));
+                }
+            }
+        }
+
+        void assigned(String studentId, Classroom classroom, Assignment assignment) {
+            StudentRecord record = record(studentId);
+            synchronized (record) {
+                record.pending.add(new PendingAssignment(classroom, assignment));
+            }
+        }
+
+        void submitted(String studentId, Assignment assignment) {
+            StudentRecord record = records.get(studentId);
+            if (record != null) {
+                synchronized (record) {
+                    for (int i = 0; i < record.pending.size(); i++) {
+                        if (record.pending.get(i).assignment == assignment) {
+                            record.pending.remove(i);
+                            break;
+                        }
+                    }
+                }
+            }
+        }
+
+        void withdrawn(String studentId, Classroom classroom) {
+            StudentRecord record = records.get(studentId);
+            if (record == null) {
+                return;
+            }
+            synchronized (record) {
+                record.enrollments.remove(classroom);
+                record.pending.removeIf(entry -> entry.classroom == classroom);
+            }
+        }
+
+        // The filter answers most "never enrolled" lookups without touching the record map
+        public boolean isEnrolledAnywhere(String studentId) {
+            if (!seen.mightContain(studentId)) {
+                return false;
+            }
+            StudentRecord record = records.get(studentId);
+            if (record == null) {
+                return false;
+            }
+            synchronized (record) {
+                return !record.enrollments.isEmpty();
+            }
+        }
+
+        public List<Classroom> getEnrollments(String studentId) {
+            StudentRecord record = records.get(studentId);
+            if (record == null) {
+                return Collections.emptyList();
+            }
+            synchronized (record) {
+                return new ArrayList<>(record.enrollments);
+            }
+        }
+
+        public List<PendingAssignment> getPendingAssignments(String studentId) {
+            StudentRecord record = records.get(studentId);
+            if (record == null) {
+                return Collections.emptyList();
+            }
+            synchronized (record) {
+                return new ArrayList<>(record.pending);
+            }
+        }
+    }
+
+    // Bloom filter over every student id that has ever enrolled: about 10 bits per student and a ~1% false
+    // positive rate at the expected size. Bits are only ever set, so withdrawn students still read as "maybe".
+    public static class StudentFilter {
+        private static final int HASHES = 7;
+
+        private final AtomicLongArray bits;
+        private final long bitMask;
+
+        public StudentFilter(int expectedStudents) {
+            long wanted = Math.max(64L, (long) expectedStudents * 10);
+            long size = Long.highestOneBit(wanted - 1) << 1;
+            this.bits = new AtomicLongArray((int) (size >>> 6));
+            this.bitMask = size - 1;
+        }
+
+        public void add(String studentId) {
+            long hash = hash(studentId);
+            long step = (hash >>> 32) | 1;
+            for (int i = 0; i < HASHES; i++) {
+                long bit = (hash + i * step) & bitMask;
+                int word = (int) (bit >>> 6);
+                long mask = 1L << bit;
+                long current = bits.get(word);
+                while ((current & mask) == 0 && !bits.compareAndSet(word, current, current | mask)) {
+                    current = bits.get(word);
+                }
+            }
+        }
+
+        public boolean mightContain(String studentId) {
+            long hash = hash(studentId);
+            long step = (hash >>> 32) | 1;
+            for (int i = 0; i < HASHES; i++) {
+                long bit = (hash + i * step) & bitMask;
+                if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        // 64-bit FNV-1a with a final avalanche, so both halves are usable as independent hashes
+        private static long hash(String key) {
+            long hash = 0xcbf29ce484222325L;
+            for (int i = 0; i < key.length(); i++) {
+                hash = (hash ^ key.charAt(i)) * 0x100000001b3L;
+            }
+            hash ^= hash >>> 33;
+            hash *= 0xff51afd7ed558ccdL;
+            hash ^= hash >>> 33;
+            return hash;
+        }
+    }
+
+    public static class Student {
+        private String studentId;
+        private String name;
+
+        public Student(String studentId, String name) {
+            this.studentId = studentId;
+            this.name = name;
+        }
+
+        public String getId() {
+            return studentId;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void submitAssignment(Classroom classroom, Assignment assignment, String submissionDetails) {
+            if (!classroom.recordSubmission(this, assignment, submissionDetails)) {
+                if (classroom.getStudent(studentId) == null) {
+                    Logger.info("Submission failed: Student {} is not enrolled in {}.", studentId, classroom.getName());
+                } else if (classroom.getAssignment(assignment.getDetails()) != assignment) {
+                    Logger.info("Submission failed: Assignment {} is not scheduled in {}.", assignment.getDetails(), classroom.getName());
+                } else {
+                    Logger.info("Submission failed: Assignment {} is closed.", assignment.getDetails());
+                }
+                return;
+            }
+            Logger.info("Assignment submitted by Student {} in {}.", studentId, classroom.getName());
+        }
+    }
+
+    public static class Assignment {
+        private String details;
+        private long dueDate;
+        private SubmissionStore submissions;
+        private volatile boolean closed;
+        private DeadlineScheduler.Timer reminderTimer;
+        private DeadlineScheduler.Timer closeTimer;
+
+        // dueDate is in epoch milliseconds, normally midnight UTC of the due day (see EpochDates)
+        public Assignment(String details, long dueDate) {
+            this.details = details;
+            this.dueDate = dueDate;
+            this.submissions = new SubmissionStore();
+        }
+
+        public String getDetails() {
+            return details;
+        }
+
+        public long getDueDate() {
+            return dueDate;
+        }
+
+        // Submissions are accepted through the whole due day: the assignment closes at the following midnight UTC
+        public long getClosingTime() {
+            return EpochDates.endOfDay(dueDate);
+        }
+
+        public SubmissionStore getSubmissions() {
+            return submissions;
+        }
+
+        public boolean isClosed() {
+            return closed;
+        }
+
+        public void close() {
+            closed = true;
+        }
+    }
+
+    // Guarded by the owning classroom's monitor.
+    // Column-oriented submissions of one assignment: a row per submitting student, holding the student's
+    // classroom ordinal, the submission time and the details. Students who have not submitted are kept in an
+    // intrusive linked list over ordinals, so both "submitted" and "pending" are listed in time proportional to the answer.
+    public static class SubmissionStore {
+        private static final int NONE = -1;
+
+        private int size;
+        private int[] studentOrdinals = new int[8];
+        private long[] submittedOn = new long[8];
+        private String[] details = new String[8];
+        private int[] rowByOrdinal = new int[8];
+        private int[] pendingNext = new int[8];
+        private int[] pendingPrev = new int[8];
+        private int pendingHead = NONE;
+        private int pendingCount;
+        private int enrolled;
+
+        public void enrollAll(int students) {
+            for (int ordinal = enrolled; ordinal < students; ordinal++) {
+                enroll(ordinal);
+            }
+        }
+
+        public void enroll(int ordinal) {
+            if (ordinal >= rowByOrdinal.length) {
+                int capacity = Math.max(rowByOrdinal.length * 2, ordinal + 1);
+                rowByOrdinal = Arrays.copyOf(rowByOrdinal, capacity);
+                pendingNext = Arrays.copyOf(pendingNext, capacity);
+                pendingPrev = Arrays.copyOf(pendingPrev, capacity);
+            }
+            rowByOrdinal[ordinal] = NONE;
+            pendingPrev[ordinal] = NONE;
+            pendingNext[ordinal] = pendingHead;
+            if (pendingHead != NONE) {
+                pendingPrev[pendingHead] = ordinal;
+            }
+            pendingHead = ordinal;
+            pendingCount++;
+            enrolled = Math.max(enrolled, ordinal + 1);
+        }
+
+        // A resubmission replaces the student's earlier row
+        public void record(int ordinal, long timestamp, String submissionDetails) {
+            int row = rowByOrdinal[ordinal];
+            if (row == NONE) {
+                unlinkPending(ordinal);
+                row = size++;
+                if (row == studentOrdinals.length) {
+                    int capacity = row * 2;
+                    studentOrdinals = Arrays.copyOf(studentOrdinals, capacity);
+                    submittedOn = Arrays.copyOf(submittedOn, capacity);
+                    details = Arrays.copyOf(details, capacity);
+                }
+                studentOrdinals[row] = ordinal;
+                rowByOrdinal[ordinal] = row;
+            }
+            submittedOn[row] = timestamp;
+            details[row] = submissionDetails;
+        }
+
+        private void unlinkPending(int ordinal) {
+            int previous = pendingPrev[ordinal];
+            int next = pendingNext[ordinal];
+            if (previous == NONE) {
+                pendingHead = next;
+            } else {
+                pendingNext[previous] = next;
+            }
+            if (next != NONE) {
+                pendingPrev[next] = previous;
+            }
+            pendingCount--;
+        }
+
+        public int rowOf(int ordinal) {
+            return ordinal < enrolled ? rowByOrdinal[ordinal] : NONE;
+        }
+
+        public long submittedOnAt(int row) {
+            return submittedOn[row];
+        }
+
+        public String detailsAt(int row) {
+            return details[row];
+        }
+
+        public int submittedCount() {
+            return size;
+        }
+
+        public int pendingCount() {
+            return pendingCount;
+        }
+
+        public void forEachSubmitted(java.util.function.IntConsumer action) {
+            for (int row = 0; row < size; row++) {
+                action.accept(studentOrdinals[row]);
+            }
+        }
+
+        public void forEachPending(java.util.function.IntConsumer action) {
+            for (int ordinal = pendingHead; ordinal != NONE; ordinal = pendingNext[ordinal]) {
+                action.accept(ordinal);
+            }
+        }
+    }
+
+    // Hierarchical timing wheel for assignment reminders and closing times. Six levels of 64 slots cover any
+    // realistic due date at one-second resolution. Other threads only enqueue inserts and cancellations;
+    // the single scheduler thread owns the wheel, so insert and cancel are O(1) and need no locks.
+    public static class DeadlineScheduler {
+        private static final int WHEEL_BITS = 6;
+        private static final int WHEEL_SIZE = 1 << WHEEL_BITS;
+        private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+        private static final int LEVELS = 6;
+
+        public enum EventType { REMINDER, CLOSE }
+
+        public interface DeadlineListener {
+            void onDeadline(EventType type, String className, Assignment assignment);
+        }
+
+        public static class Timer {
+            private final long deadlineTick;
+            private final EventType type;
+            private final String className;
+            private final Assignment assignment;
+            private volatile boolean cancelled;
+            private Timer previous;
+            private Timer next;
+            private Timer[] bucket;
+            private int slot;
+
+            Timer(long deadlineTick, EventType type, String className, Assignment assignment) {
+                this.deadlineTick = deadlineTick;
+                this.type = type;
+                this.className = className;
+                this.assignment = assignment;
+            }
+        }
+
+        private final long tickMillis;
+        private final long reminderLeadMillis;
+        private final DeadlineListener listener;
+        private final Timer[][] wheels = new Timer[LEVELS][WHEEL_SIZE];
+        private final Queue<Timer> pendingInserts = new ConcurrentLinkedQueue<>();
+        private final Queue<Timer> pendingCancels = new ConcurrentLinkedQueue<>();
+        private final long startMillis;
+        private final Thread worker;
+        private long currentTick;
+        private volatile boolean running = true;
+
+        public DeadlineScheduler(long reminderLeadMillis, DeadlineListener listener) {
+            this(1000, reminderLeadMillis, listener);
+        }
+
+        public DeadlineScheduler(long tickMillis, long reminderLeadMillis, DeadlineListener listener) {
+            this.tickMillis = tickMillis;
+            this.reminderLeadMillis = reminderLeadMillis;
+            this.listener = listener;
+            this.startMillis = System.currentTimeMillis();
+            this.worker = new Thread(this::run, "assignment-deadlines");
+            worker.setDaemon(true);
+        }
+
+        // Logs reminders and closes assignments at their due time
+        public static DeadlineScheduler withDefaultActions(long reminderLeadMillis) {
+            return new DeadlineScheduler(reminderLeadMillis, (type, className, assignment) -> {
+                if (type == EventType.REMINDER) {
+                    Logger.info("Reminder: assignment {} in {} is due {}.", assignment.getDetails(), className, EpochDates.format(assignment.getDueDate()));
+                } else {
+                    assignment.close();
+                    Logger.info("Assignment {} in {} is now closed for submissions.", assignment.getDetails(), className);
+                }
+            });
+        }
+
+        public void start() {
+            worker.start();
+        }
+
+        public void stop() {
+            running = false;
+            worker.interrupt();
+        }
+
+        // The reminder fires reminderLeadMillis before the assignment closes at the end of its due day
+        public void register(String className, Assignment assignment) {
+            long closing = assignment.getClosingTime();
+            Timer reminder = new Timer(tickOf(closing - reminderLeadMillis), EventType.REMINDER, className, assignment);
+            Timer close = new Timer(tickOf(closing), EventType.CLOSE, className, assignment);
+            assignment.reminderTimer = reminder;
+            assignment.closeTimer = close;
+            pendingInserts.add(reminder);
+            pendingInserts.add(close);
+        }
+
+        public void unregister(Assignment assignment) {
+            cancel(assignment.reminderTimer);
+            cancel(assignment.closeTimer);
+        }
+
+        private void cancel(Timer timer) {
+            if (timer != null && !timer.cancelled) {
+                timer.cancelled = true;
+                pendingCancels.add(timer);
+            }
+        }
+
+        private long tickOf(long epochMillis) {
+            return Math.floorDiv(epochMillis - startMillis, tickMillis);
+        }
+
+        private void run() {
+            while (running) {
+                long now = tickOf(System.currentTimeMillis());
+                drainPending();
+                while (currentTick < now) {
+                    advance();
+                    drainPending();
+                }
+                try {
+                    Thread.sleep(Math.max(1, startMillis + (currentTick + 1) * tickMillis - System.currentTimeMillis()));
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+
+        private void drainPending() {
+            Timer timer;
+            while ((timer = pendingCancels.poll()) != null) {
+                unlink(timer);
+            }
+            while ((timer = pendingInserts.poll()) != null) {
+                if (!timer.cancelled) {
+                    place(timer);
+                }
+            }
+        }
+
+        // Level k holds timers due within 64^(k+1) ticks, in the slot given by bits [6k, 6k+6) of their deadline
+        private void place(Timer timer) {
+            long delta = timer.deadlineTick - currentTick;
+            if (delta <= 0) {
+                fire(timer);
+                return;
+            }
+            int level = 0;
+            while (level < LEVELS - 1 && delta >= 1L << (WHEEL_BITS * (level + 1))) {
+                level++;
+            }
+            int slot = (int) ((timer.deadlineTick >>> (WHEEL_BITS * level)) & WHEEL_MASK);
+            Timer[] bucket = wheels[level];
+            timer.bucket = bucket;
+            timer.slot = slot;
+            timer.previous = null;
+            timer.next = bucket[slot];
+            if (bucket[slot] != null) {
+                bucket[slot].previous = timer;
+            }
+            bucket[slot] = timer;
+        }
+
+        private void unlink(Timer timer) {
+            if (timer.bucket == null) {
+                return;
+            }
+            if (timer.previous != null) {
+                timer.previous.next = timer.next;
+            } else {
+                timer.bucket[timer.slot] = timer.next;
+            }
+            if (timer.next != null) {
+                timer.next.previous = timer.previous;
+            }
+            timer.bucket = null;
+            timer.previous = null;
+            timer.next = null;
+        }
+
+        // Moves one tick forward: cascades higher-level slots that start at this tick (highest first), then fires level 0
+        private void advance() {
+            currentTick++;
+            int highest = 0;
+            while (highest < LEVELS - 1 && (currentTick & ((1L << (WHEEL_BITS * (highest + 1))) - 1)) == 0) {
+                highest++;
+            }
+            for (int level = highest; level >= 1; level--) {
+                int slot = (int) ((currentTick >>> (WHEEL_BITS * level)) & WHEEL_MASK);
+                Timer timer = detach(wheels[level], slot);
+                while (timer != null) {
+                    Timer next = timer.next;
+                    place(timer);
+                    timer = next;
+                }
+            }
+            Timer timer = detach(wheels[0], (int) (currentTick & WHEEL_MASK));
+            while (timer != null) {
+                Timer next = timer.next;
+                fire(timer);
+                timer = next;
+            }
+        }
+
+        private static Timer detach(Timer[] bucket, int slot) {
+            Timer head = bucket[slot];
+            bucket[slot] = null;
+            for (Timer timer = head; timer != null; timer = timer.next) {
+                timer.bucket = null;
+                timer.previous = null;
+            }
+            return head;
+        }
+
+        private void fire(Timer timer) {
+            timer.bucket = null;
+            if (timer.cancelled) {
+                return;
+            }
+            try {
+                listener.onDeadline(timer.type, timer.className, timer.assignment);
+            } catch (RuntimeException e) {
+                Logger.log(Logger.Level.ERROR, "Deadline handler failed for {}: {}", timer.assignment.getDetails(), e, null);
+            }
+        }
+    }
+
+    // Calendar dates as epoch milliseconds at midnight UTC. UTC keeps a due date the same instant whichever
+    // zone the server runs in. Parsing allocates nothing and keeps no state, so it is safe on any thread.
+    public static class EpochDates {
+        public static final long INVALID = Long.MIN_VALUE;
+
+        private static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+
+        // Accepts yyyy-M-d with one- or two-digit month and day; anything else, or a day that does not exist, is INVALID
+        public static long parse(CharSequence text) {
+            int length = text.length();
+            int i = 0;
+            int year = 0;
+            int digits = 0;
+            for (; i < length && digits < 4 && isDigit(text.charAt(i)); i++, digits++) {
+                year = year * 10 + (text.charAt(i) - '0');
+            }
+            if (digits != 4 || i >= length || text.charAt(i++) != '-') {
+                return INVALID;
+            }
+            int month = 0;
+            for (digits = 0; i < length && digits < 2 && isDigit(text.charAt(i)); i++, digits++) {
+                month = month * 10 + (text.charAt(i) - '0');
+            }
+            if (digits == 0 || i >= length || text.charAt(i++) != '-') {
+                return INVALID;
+            }
+            int day = 0;
+            for (digits = 0; i < length && digits < 2 && isDigit(text.charAt(i)); i++, digits++) {
+                day = day * 10 + (text.charAt(i) - '0');
+            }
+            if (digits == 0 || i != length || month < 1 || month > 12 || day < 1 || day > daysInMonth(year, month)) {
+                return INVALID;
+            }
+            return daysFromCivil(year, month, day) * MILLIS_PER_DAY;
+        }
+
+        public static String format(long epochMillis) {
+            // Inverse of daysFromCivil, shifted so the era starts on March 1st
+            long days = Math.floorDiv(epochMillis, MILLIS_PER_DAY) + 719468;
+            long era = Math.floorDiv(days, 146097);
+            long dayOfEra = days - era * 146097;
+            long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+            long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+            long shiftedMonth = (5 * dayOfYear + 2) / 153;
+            int day = (int) (dayOfYear - (153 * shiftedMonth + 2) / 5 + 1);
+            int month = (int) (shiftedMonth < 10 ? shiftedMonth + 3 : shiftedMonth - 9);
+            long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+            char[] out = new char[10];
+            for (int p = 3; p >= 0; p--, year /= 10) {
+                out[p] = (char) ('0' + year % 10);
+            }
+            out[4] = '-';
+            out[5] = (char) ('0' + month / 10);
+            out[6] = (char) ('0' + month % 10);
+            out[7] = '-';
+            out[8] = (char) ('0' + day / 10);
+            out[9] = (char) ('0' + day % 10);
+            return new String(out);
+        }
+
+        // The first instant of the next UTC day
+        public static long endOfDay(long epochMillis) {
+            return (Math.floorDiv(epochMillis, MILLIS_PER_DAY) + 1) * MILLIS_PER_DAY;
+        }
+
+        private static boolean isDigit(char c) {
+            return c >= '0' && c <= '9';
+        }
+
+        private static int daysInMonth(int year, int month) {
+            if (month == 2) {
+                boolean leap = year % 4 == 0 && (year % 100 != 0 || year % 400 == 0);
+                return leap ? 29 : 28;
+            }
+            return month == 4 || month == 6 || month == 9 || month == 11 ? 30 : 31;
+        }
+
+        // Days since 1970-01-01 in the proleptic Gregorian calendar
+        private static long daysFromCivil(int year, int month, int day) {
+            int y = month <= 2 ? year - 1 : year;
+            int era = Math.floorDiv(y, 400);
+            int yearOfEra = y - era * 400;
+            int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+            int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+            return era * 146097L + dayOfEra - 719468;
+        }
+    }
+
+    public static class Submission {
+        private Student student;
+        private Assignment assignment;
+        private String submissionDetails;
+        private long submittedOn;
+
+        public Submission(Student student, Assignment assignment, String submissionDetails) {
+            this(student, assignment, submissionDetails, System.currentTimeMillis());
+        }
+
+        public Submission(Student student, Assignment assignment, String submissionDetails, long submittedOn) {
+            this.student = student;
+            this.assignment = assignment;
+            this.submissionDetails = submissionDetails;
+            this.submittedOn = submittedOn;
+        }
+
+        public Student getStudent() {
+            return student;
+        }
+
+        public Assignment getAssignment() {
+            return assignment;
+        }
+
+        public String getSubmissionDetails() {
+            return submissionDetails;
+        }
+
+        public long getSubmittedOn() {
+            return submittedOn;
+        }
+    }
+
+    // Safe for concurrent use: the classroom map is concurrent and everything inside a classroom is guarded by that classroom
+    public static class ClassroomManager {
+        private Map<String, Classroom> classrooms;
+        private StudentRegistry students;
+        private volatile DeadlineScheduler deadlines;
+
+        public ClassroomManager() {
+            this.classrooms = new ConcurrentHashMap<>();
+            this.students = new StudentRegistry();
+        }
+
+        public void setDeadlineScheduler(DeadlineScheduler deadlines) {
+            this.deadlines = deadlines;
+        }
+
+        public void addClassroom(String name) {
+            if (classrooms.putIfAbsent(name, new Classroom(name, students)) != null) {
+                Logger.info("Classroom {} already exists.", name);
+                return;
+            }
+            Logger.info("Classroom {} has been created.", name);
+        }
+
+        public void removeClassroom(String name) {
+            Classroom removed = classrooms.remove(name);
+            if (removed != null) {
+                removed.detach();
+            }
+            DeadlineScheduler deadlines = this.deadlines;
+            if (removed != null && deadlines != null) {
+                for (Assignment assignment : removed.listAssignments()) {
+                    deadlines.unregister(assignment);
+                }
+            }
+            Logger.info("Classroom {} has been removed.", name);
+        }
+
+        public Collection<Classroom> listClassrooms() {
+            return classrooms.values();
+        }
+
+        public Classroom getClassroom(String name) {
+            return classrooms.get(name);
+        }
+
+        public void scheduleAssignment(String className, String assignmentDetails, long dueDate) {
+            Classroom classroom = classrooms.get(className);
+            if (classroom == null) {
+                Logger.info("Classroom {} not found.", className);
+                return;
+            }
+            Assignment assignment = new Assignment(assignmentDetails, dueDate);
+            DeadlineScheduler deadlines = this.deadlines;
+            if (classroom.scheduleAssignment(assignment) && deadlines != null) {
+                deadlines.register(className, assignment);
+            }
+        }
+
+        public boolean addStudent(String studentId, String studentName, String className) {
+            Classroom classroom = classrooms.get(className);
+            if (classroom == null) {
+                Logger.info("Classroom {} not found.", className);
+                return false;
+            }
+            return classroom.addStudent(new Student(studentId, studentName));
+        }
+
+        public boolean isEnrolledAnywhere(String studentId) {
+            return students.isEnrolledAnywhere(studentId);
+        }
+
+        public void submitAssignment(String studentId, String className, String assignmentDetails, String submissionDetails) {
+            Classroom classroom = classrooms.get(className);
+            Student student = classroom != null ? classroom.getStudent(studentId) : null;
+            Assignment assignment = classroom != null ? classroom.getAssignment(assignmentDetails) : null;
+            if (student == null || assignment == null) {
+                Logger.log("Submission failed: Classroom or Student or Assignment not found.");
+                return;
+            }
+            student.submitAssignment(classroom, assignment, submissionDetails);
+        }
+
+        // Publishes a fully restored classroom; returns false, and registers nothing, if the name is already taken.
+        // The classroom's monitor is held until it has joined the registry, so an enrollment racing the publish waits.
+        boolean publishClassroom(Classroom classroom) {
+            synchronized (classroom) {
+                if (classrooms.putIfAbsent(classroom.getName(), classroom) != null) {
+                    return false;
+                }
+                classroom.attach(students);
+            }
+            registerDeadlines(classroom);
+            return true;
+        }
+
+        void registerDeadlines(Classroom classroom) {
+            DeadlineScheduler deadlines = this.deadlines;
+            if (deadlines == null) {
+                return;
+            }
+            for (Assignment assignment : classroom.listAssignments()) {
+                if (!assignment.isClosed()) {
+                    deadlines.register(classroom.getName(), assignment);
+                }
+            }
+        }
+
+        public void saveSnapshot(Path file) {
+            try {
+                ClassroomSnapshot.Stats stats = new ClassroomSnapshot(this).save(file);
+                Logger.info("Snapshot saved to {}: {}", file, stats);
+            } catch (IOException e) {
+                Logger.log(Logger.Level.ERROR, "Snapshot save failed: {}", e.getMessage(), null, null);
+            }
+        }
+
+        public void loadSnapshot(Path file) {
+            try {
+                ClassroomSnapshot.Stats stats = new ClassroomSnapshot(this).load(file);
+                Logger.info("Snapshot loaded from {}: {}", file, stats);
+            } catch (IOException e) {
+                Logger.log(Logger.Level.ERROR, "Snapshot load failed: {}", e.getMessage(), null, null);
+            }
+        }
+
+        public void runScript(Path file) {
+            try {
+                ScriptRunner.Result result = new ScriptRunner(this).run(file);
+                Logger.info("Script {}: {}", file, result);
+            } catch (IOException e) {
+                Logger.log(Logger.Level.ERROR, "Script failed: {}", e.getMessage(), null, null);
+            }
+        }
+
+        public void importRoster(Path file) {
+            try {
+                RosterImporter.Result result = new RosterImporter(this).importRoster(file);
+                Logger.log(result.toString());
+            } catch (IOException e) {
+                Logger.log(Logger.Level.ERROR, "Roster import failed: {}", e.getMessage(), null, null);
+            }
+        }
+
+        public void listSubmissions(String className, String assignmentDetails) {
+            Classroom classroom = classrooms.get(className);
+            Assignment assignment = classroom != null ? classroom.getAssignment(assignmentDetails) : null;
+            if (assignment == null) {
+                Logger.log("Classroom or Assignment not found.");
+                return;
+            }
+            List<Student> submitted = classroom.listSubmitted(assignment);
+            List<Student> pending = classroom.listPending(assignment);
+            Logger.info("Submitted ({}):", submitted.size());
+            for (Student student : submitted) {
+                Logger.info(" - {} (ID: {})", student.getName(), student.getId());
+            }
+            Logger.info("Not submitted ({}):", pending.size());
+            for (Student student : pending) {
+                Logger.info(" - {} (ID: {})", student.getName(), student.getId());
+            }
+        }
+
+        public StudentRegistry getStudentRegistry() {
+            return students;
+        }
+
+        public void showStudentDashboard(String studentId) {
+            List<Classroom> enrollments = students.isEnrolledAnywhere(studentId) ? students.getEnrollments(studentId) : Collections.<Classroom>emptyList();
+            if (enrollments.isEmpty()) {
+                Logger.info("Student {} is not enrolled in any classroom.", studentId);
+                return;
+            }
+            Logger.info("Classrooms for Student {} ({}):", studentId, enrollments.size());
+            for (Classroom classroom : enrollments) {
+                Logger.info(" - {}", classroom.getName());
+            }
+            List<StudentRegistry.PendingAssignment> pending = students.getPendingAssignments(studentId);
+            Logger.info("Pending assignments ({}):", pending.size());
+            for (StudentRegistry.PendingAssignment entry : pending) {
+                Logger.info(" - {} in {} (due {})", entry.getAssignment().getDetails(), entry.getClassroom().getName(), EpochDates.format(entry.getAssignment().getDueDate()));
+            }
+        }
+
+        public void listStudents(String className) {
+            Classroom classroom = classrooms.get(className);
+            if (classroom == null) {
+                Logger.info("Classroom {} not found.", className);
+                return;
+            }
+            Logger.info("Students in {}:", className);
+            for (Student student : classroom.listStudents()) {
+                Logger.info(" - {} (ID: {})", student.getName(), student.getId());
+            }
+        }
+    }
+
+    // Streams a roster file of "classroom,studentId,name" lines into the manager. Rows are deduplicated by
+    // student id per classroom and enrolled in batches, with one summary log line for the whole import.
+    public static class RosterImporter {
+        private static final int BATCH_SIZE = 8192;
+
+        private final ClassroomManager manager;
+
+        public static class Result {
+            long rows;
+            long enrolled;
+            long duplicates;
+            long unknownClassroom;
+            long malformed;
+            long elapsedNanos;
+
+            public long getEnrolled() {
+                return enrolled;
+            }
+
+            @Override
+            public String toString() {
+                return String.format("Roster import: %d rows, %d students enrolled, %d duplicates, %d for unknown classrooms, %d malformed in %.2f s.",
+                        rows, enrolled, duplicates, unknownClassroom, malformed, elapsedNanos / 1_000_000_000.0);
+            }
+        }
+
+        public RosterImporter(ClassroomManager manager) {
+            this.manager = manager;
+        }
+
+        public Result importRoster(Path file) throws IOException {
+            try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                return importRoster(reader);
+            }
+        }
+
+        public Result importRoster(BufferedReader reader) throws IOException {
+            long start = System.nanoTime();
+            Result result = new Result();
+            Map<String, Set<String>> seenByClassroom = new HashMap<>();
+            Map<String, List<Student>> batches = new HashMap<>();
+            String line;
+            boolean first = true;
+            while ((line = reader.readLine()) != null) {
+                if (first) {
+                    first = false;
+                    if (line.regionMatches(true, 0, "classroom,", 0, 10)) {
+                        continue;
+                    }
+                }
+                if (line.isBlank()) {
+                    continue;
+                }
+                result.rows++;
+                int firstComma = line.indexOf(',');
+                int secondComma = firstComma < 0 ? -1 : line.indexOf(',', firstComma + 1);
+                if (secondComma < 0) {
+                    result.malformed++;
+                    continue;
+                }
+                String className = line.substring(0, firstComma).trim();
+                String studentId = line.substring(firstComma + 1, secondComma).trim();
+                String studentName = line.substring(secondComma + 1).trim();
+                if (className.isEmpty() || studentId.isEmpty()) {
+                    result.malformed++;
+                    continue;
+                }
+                if (!seenByClassroom.computeIfAbsent(className, key -> new HashSet<>()).add(studentId)) {
+                    result.duplicates++;
+                    continue;
+                }
+                List<Student> batch = batches.computeIfAbsent(className, key -> new ArrayList<>(BATCH_SIZE));
+                batch.add(new Student(studentId, studentName));
+                if (batch.size() == BATCH_SIZE) {
+                    flush(className, batch, result);
+                }
+            }
+            for (Map.Entry<String, List<Student>> entry : batches.entrySet()) {
+                flush(entry.getKey(), entry.getValue(), result);
+            }
+            result.elapsedNanos = System.nanoTime() - start;
+            return result;
+        }
+
+        private void flush(String className, List<Student> batch, Result result) {
+            if (batch.isEmpty()) {
+                return;
+            }
+            Classroom classroom = manager.getClassroom(className);
+            if (classroom == null) {
+                result.unknownClassroom += batch.size();
+            } else {
+                int added = classroom.addStudents(batch);
+                result.enrolled += added;
+                result.duplicates += batch.size() - added;
+            }
+            batch.clear();
+        }
+    }
+
+    // Binary dump of every classroom with its roster, assignments and submissions. All strings go into one
+    // table up front and everything else refers to them by varint index; dates are stored as epoch millis.
+    //
+    //   "VCSN" version:u8 stringCount:varint (byteLength:varint utf8)*
+    //   classroomCount:varint per classroom:
+    //     name:ref studentCount:varint (id:ref name:ref)*
+    //     assignmentCount:varint per assignment:
+    //       details:ref due:i64 closed:u8 submissionCount:varint (ordinal:varint submittedOn:i64 details:ref)*
+    //
+    // Students are written in roster order, so a student's position doubles as its ordinal in the submission rows.
+    public static class ClassroomSnapshot {
+        private static final int MAGIC = 0x5643534E;
+        private static final byte VERSION = 1;
+
+        private final ClassroomManager manager;
+
+        public static class Stats {
+            int classrooms;
+            int skippedClassrooms;
+            long students;
+            long assignments;
+            long submissions;
+            long bytes;
+            long elapsedNanos;
+
+            @Override
+            public String toString() {
+                return String.format("%d classrooms (%d skipped), %d students, %d assignments, %d submissions, %d bytes in %.2f s.",
+                        classrooms, skippedClassrooms, students, assignments, submissions, bytes, elapsedNanos / 1_000_000_000.0);
+            }
+        }
+
+        public ClassroomSnapshot(ClassroomManager manager) {
+            this.manager = manager;
+        }
+
+        public Stats save(Path file) throws IOException {
+            long start = System.nanoTime();
+            Stats stats = new Stats();
+            Map<String, Integer> stringIds = new HashMap<>();
+            List<String> strings = new ArrayList<>();
+            Encoder body = new Encoder(1 << 16);
+            List<Classroom> classrooms = new ArrayList<>(manager.listClassrooms());
+            body.varint(classrooms.size());
+            for (Classroom classroom : classrooms) {
+                // Each classroom is written under its own monitor, so it is internally consistent
+                synchronized (classroom) {
+                    body.varint(intern(classroom.getName(), stringIds, strings));
+                    body.varint(classroom.roster.size());
+                    for (Student student : classroom.roster) {
+                        body.varint(intern(student.getId(), stringIds, strings));
+                        body.varint(intern(student.getName(), stringIds, strings));
+                    }
+                    body.varint(classroom.assignments.size());
+                    for (Assignment assignment : classroom.assignments.values()) {
+                        SubmissionStore store = assignment.getSubmissions();
+                        body.varint(intern(assignment.getDetails(), stringIds, strings));
+                        body.int64(assignment.getDueDate());
+                        body.int8(assignment.isClosed() ? 1 : 0);
+                        body.varint(store.submittedCount());
+                        for (int row = 0; row < store.submittedCount(); row++) {
+                            body.varint(store.studentOrdinals[row]);
+                            body.int64(store.submittedOnAt(row));
+                            body.varint(intern(store.detailsAt(row), stringIds, strings));
+                        }
+                        stats.submissions += store.submittedCount();
+                    }
+                    stats.students += classroom.roster.size();
+                    stats.assignments += classroom.assignments.size();
+                }
+                stats.classrooms++;
+            }
+
+            Encoder header = new Encoder(1 << 16);
+            header.int32(MAGIC);
+            header.int8(VERSION);
+            header.varint(strings.size());
+            for (String value : strings) {
+                byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+                header.varint(utf8.length);
+                header.bytes(utf8);
+            }
+
+            // Written next to the target and moved into place, so a crash never leaves a half-written snapshot
+            Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer[] buffers = {header.asBuffer(), body.asBuffer()};
+                while (buffers[1].hasRemaining()) {
+                    channel.write(buffers);
+                }
+                channel.force(false);
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            stats.bytes = header.size + body.size;
+            stats.elapsedNanos = System.nanoTime() - start;
+            return stats;
+        }
+
+        // Classrooms that already exist in the manager are left alone and counted as skipped. Each classroom is
+        // decoded in full before it is published, so a corrupt snapshot never leaves a partial classroom behind.
+        public Stats load(Path file) throws IOException {
+            long start = System.nanoTime();
+            Stats stats = new Stats();
+            byte[] data = Files.readAllBytes(file);
+            stats.bytes = data.length;
+            Decoder in = new Decoder(data);
+            try {
+                if (in.int32() != MAGIC) {
+                    throw new IOException("Not a classroom snapshot: " + file);
+                }
+                byte version = in.int8();
+                if (version != VERSION) {
+                    throw new IOException("Unsupported snapshot version " + version);
+                }
+                String[] strings = new String[in.count(1)];
+                for (int i = 0; i < strings.length; i++) {
+                    strings[i] = in.utf8(in.varint());
+                }
+                int classroomCount = in.count(3);
+                for (int c = 0; c < classroomCount; c++) {
+                    String name = strings[in.varint()];
+                    int studentCount = in.count(2);
+                    List<Student> roster = new ArrayList<>(studentCount);
+                    for (int i = 0; i < studentCount; i++) {
+                        roster.add(new Student(strings[in.varint()], strings[in.varint()]));
+                    }
+                    if (manager.getClassroom(name) != null) {
+                        stats.skippedClassrooms++;
+                        skipAssignments(in);
+                        continue;
+                    }
+                    Classroom classroom = new Classroom(name);
+                    int assignmentCount = in.count(11);
+                    long submissionCount = 0;
+                    synchronized (classroom) {
+                        // Assignments go in before the roster, so each student is added to every submission store in one pass
+                        List<Assignment> assignments = new ArrayList<>(assignmentCount);
+                        int[][] submissions = new int[assignmentCount][];
+                        long[][] submittedOn = new long[assignmentCount][];
+                        for (int a = 0; a < assignmentCount; a++) {
+                            Assignment assignment = new Assignment(strings[in.varint()], in.int64());
+                            if (in.int8() != 0) {
+                                assignment.close();
+                            }
+                            if (!classroom.addAssignment(assignment)) {
+                                throw new IOException("Duplicate assignments in snapshot classroom " + name);
+                            }
+                            assignments.add(assignment);
+                            int rows = in.count(10);
+                            submissions[a] = new int[rows * 2];
+                            submittedOn[a] = new long[rows];
+                            submissionCount += rows;
+                            for (int i = 0; i < rows; i++) {
+                                int ordinal = in.varint();
+                                if (ordinal < 0 || ordinal >= studentCount) {
+                                    throw new IOException("Submission for unknown student in classroom " + name);
+                                }
+                                submissions[a][2 * i] = ordinal;
+                                submittedOn[a][i] = in.int64();
+                                submissions[a][2 * i + 1] = in.varint();
+                            }
+                        }
+                        if (classroom.addStudents(roster) != studentCount) {
+                            throw new IOException("Duplicate student ids in snapshot classroom " + name);
+                        }
+                        for (int a = 0; a < assignmentCount; a++) {
+                            for (int i = 0; i < submittedOn[a].length; i++) {
+                                classroom.restoreSubmission(submissions[a][2 * i], assignments.get(a), submittedOn[a][i], strings[submissions[a][2 * i + 1]]);
+                            }
+                        }
+                    }
+                    // Another thread may have created the same classroom while this one was being decoded
+                    if (!manager.publishClassroom(classroom)) {
+                        stats.skippedClassrooms++;
+                        continue;
+                    }
+                    stats.submissions += submissionCount;
+                    stats.assignments += assignmentCount;
+                    stats.students += studentCount;
+                    stats.classrooms++;
+                }
+            } catch (IndexOutOfBoundsException e) {
+                throw new IOException("Snapshot is truncated or corrupt: " + file);
+            }
+            stats.elapsedNanos = System.nanoTime() - start;
+            return stats;
         }
-    }
-
-    public static class Classroom {
-        private String name;
-        private List<Student> students;
-        private List<Assignment> assignments;
 
-        public Classroom(String name) {
-            this.name = name;
-            this.students = new ArrayList<>();
-            this.assignments = new ArrayList<>();
+        private static void skipAssignments(Decoder in) throws IOException {
+            int assignmentCount = in.count(11);
+            for (int a = 0; a < assignmentCount; a++) {
+                in.varint();
+                in.int64();
+                in.int8();
+                int submissionCount = in.count(10);
+                for (int i = 0; i < submissionCount; i++) {
+                    in.varint();
+                    in.int64();
+                    in.varint();
+                }
+            }
         }
 
-        public String getName() {
-            return name;
+        private static int intern(String value, Map<String, Integer> ids, List<String> strings) {
+            Integer id = ids.get(value);
+            if (id == null) {
+                id = strings.size();
+                ids.put(value, id);
+                strings.add(value);
+            }
+            return id;
         }
 
-        public void addStudent(Student student) {
-            students.add(student);
-            Logger.log("Student " + student.getName() + " has been enrolled in " + name + ".");
-        }
+        private static class Encoder {
+            byte[] buffer;
+            int size;
 
-        public List<Student> listStudents() {
-            return students;
-        }
+            Encoder(int capacity) {
+                this.buffer = new byte[capacity];
+            }
+
+            private void ensure(int extra) {
+                if (size + extra > buffer.length) {
+                    buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + extra));
+                }
+            }
+
+            void varint(int value) {
+                ensure(5);
+                while ((value & ~0x7F) != 0) {
+                    buffer[size++] = (byte) ((value & 0x7F) | 0x80);
+                    value >>>= 7;
+                }
+                buffer[size++] = (byte) value;
+            }
+
+            void int8(int value) {
+                ensure(1);
+                buffer[size++] = (byte) value;
+            }
+
+            void int32(int value) {
+                ensure(4);
+                for (int shift = 24; shift >= 0; shift -= 8) {
+                    buffer[size++] = (byte) (value >>> shift);
+                }
+            }
+
+            void int64(long value) {
+                ensure(8);
+                for (int shift = 56; shift >= 0; shift -= 8) {
+                    buffer[size++] = (byte) (value >>> shift);
+                }
+            }
+
+            void bytes(byte[] value) {
+                ensure(value.length);
+                System.arraycopy(value, 0, buffer, size, value.length);
+                size += value.length;
+            }
 
-        public void scheduleAssignment(Assignment assignment) {
-            assignments.add(assignment);
-            Logger.log("Assignment for " + name + " has been scheduled.");
+            ByteBuffer asBuffer() {
+                return ByteBuffer.wrap(buffer, 0, size);
+            }
         }
 
-        public List<Assignment> listAssignments() {
-            return assignments;
+        private static class Decoder {
+            final byte[] data;
+            int position;
+
+            Decoder(byte[] data) {
+                this.data = data;
+            }
+
+            int varint() {
+                int value = 0;
+                for (int shift = 0; ; shift += 7) {
+                    byte b = data[position++];
+                    value |= (b & 0x7F) << shift;
+                    if (b >= 0) {
+                        return value;
+                    }
+                }
+            }
+
+            // Reads an element count and rejects one that the remaining bytes could not hold, so a corrupt count
+            // fails here rather than as a huge or negative array allocation
+            int count(int minBytesEach) throws IOException {
+                int count = varint();
+                if (count < 0 || (long) count * minBytesEach > data.length - position) {
+                    throw new IOException("Snapshot is truncated or corrupt: count " + count + " at offset " + position);
+                }
+                return count;
+            }
+
+            byte int8() {
+                return data[position++];
+            }
+
+            int int32() {
+                int value = 0;
+                for (int i = 0; i < 4; i++) {
+                    value = (value << 8) | (data[position++] & 0xFF);
+                }
+                return value;
+            }
+
+            long int64() {
+                long value = 0;
+                for (int i = 0; i < 8; i++) {
+                    value = (value << 8) | (data[position++] & 0xFF);
+                }
+                return value;
+            }
+
+            String utf8(int length) {
+                if (length < 0 || length > data.length - position) {
+                    throw new ArrayIndexOutOfBoundsException(position + length);
+                }
+                String value = new String(data, position, length, StandardCharsets.UTF_8);
+                position += length;
+                return value;
+            }
         }
     }
 
-    public static class Student {
-        private String studentId;
-        private String name;
+    // Splits a command line into whitespace-separated arguments. Single or double quotes group an argument that
+    // contains spaces, and inside quotes a backslash escapes the next character. Tokenizing only records offsets
+    // into the line; a String is built for an argument only when it is handed to a command.
+    public static class CommandTokenizer {
+        private CharSequence line;
+        private int count;
+        private int[] starts = new int[8];
+        private int[] ends = new int[8];
+        private boolean[] escaped = new boolean[8];
+
+        public int tokenize(CharSequence line) {
+            this.line = line;
+            count = 0;
+            int length = line.length();
+            int i = 0;
+            while (true) {
+                while (i < length && Character.isWhitespace(line.charAt(i))) {
+                    i++;
+                }
+                if (i >= length) {
+                    return count;
+                }
+                char c = line.charAt(i);
+                boolean hasEscapes = false;
+                int start;
+                int end;
+                if (c == '"' || c == '\'') {
+                    start = ++i;
+                    while (i < length && line.charAt(i) != c) {
+                        if (line.charAt(i) == '\\' && i + 1 < length) {
+                            hasEscapes = true;
+                            i++;
+                        }
+                        i++;
+                    }
+                    end = i;
+                    if (i < length) {
+                        i++;
+                    }
+                } else {
+                    start = i;
+                    while (i < length && !Character.isWhitespace(line.charAt(i))) {
+                        i++;
+                    }
+                    end = i;
+                }
+                add(start, end, hasEscapes);
+            }
+        }
 
-        public Student(String studentId, String name) {
-            this.studentId = studentId;
-            this.name = name;
+        private void add(int start, int end, boolean hasEscapes) {
+            if (count == starts.length) {
+                starts = Arrays.copyOf(starts, count * 2);
+                ends = Arrays.copyOf(ends, count * 2);
+                escaped = Arrays.copyOf(escaped, count * 2);
+            }
+            starts[count] = start;
+            ends[count] = end;
+            escaped[count] = hasEscapes;
+            count++;
         }
 
-        public String getId() {
-            return studentId;
+        public int count() {
+            return count;
         }
 
-        public String getName() {
-            return name;
+        public String token(int index) {
+            if (!escaped[index]) {
+                return line.subSequence(starts[index], ends[index]).toString();
+            }
+            StringBuilder unescaped = new StringBuilder(ends[index] - starts[index]);
+            for (int i = starts[index]; i < ends[index]; i++) {
+                char c = line.charAt(i);
+                if (c == '\\' && i + 1 < ends[index]) {
+                    c = line.charAt(++i);
+                }
+                unescaped.append(c);
+            }
+            return unescaped.toString();
         }
 
-        public void submitAssignment(Classroom classroom, Assignment assignment, String submissionDetails) {
-            Submission submission = new Submission(this, assignment, submissionDetails);
-            Logger.log("Assignment submitted by Student " + studentId + " in " + classroom.getName() + ".");
+        // Tokens from the given index on, e.g. toArray(1) for the arguments after a command name
+        public String[] toArray(int from) {
+            String[] tokens = new String[Math.max(0, count - from)];
+            for (int i = 0; i < tokens.length; i++) {
+                tokens[i] = token(from + i);
+            }
+            return tokens;
         }
     }
 
-    public static class Assignment {
-        private String details;
-        private Date dueDate;
+    // Runs a file of commands, one per line: "<command> <args...>" with the same commands a teacher can use,
+    // except run_script: a script cannot start another script, so it cannot recurse into itself. Blank lines and lines starting with '#' are skipped. "as_student <id> <name>" picks the student used by
+    // the join_classroom and submit_assignment lines after it. A reader thread tokenizes the file in batches
+    // while the calling thread executes the previous batch, so parsing overlaps with execution.
+    public static class ScriptRunner {
+        private static final int BATCH_SIZE = 1024;
+        private static final List<ScriptLine> END = new ArrayList<>(0);
+
+        private final ClassroomManager manager;
+        private final Map<String, Command> commands;
+        private Command joinClassroom;
+        private Command submitAssignment;
+
+        public static class Result {
+            long lines;
+            long executed;
+            long rejected;
+            long elapsedNanos;
+
+            public long getExecuted() {
+                return executed;
+            }
 
-        public Assignment(String details, Date dueDate) {
-            this.details = details;
-            this.dueDate = dueDate;
+            @Override
+            public String toString() {
+                double seconds = elapsedNanos / 1_000_000_000.0;
+                return String.format("%d lines, %d commands executed, %d rejected in %.2f s (%.0f commands/s).",
+                        lines, executed, rejected, seconds, seconds > 0 ? executed / seconds : 0.0);
+            }
         }
 
-        public String getDetails() {
-            return details;
+        private static class ScriptLine {
+            final long number;
+            final String command;
+            final String[] args;
+
+            ScriptLine(long number, String command, String[] args) {
+                this.number = number;
+                this.command = command;
+                this.args = args;
+            }
         }
 
-        public Date getDueDate() {
-            return dueDate;
+        public ScriptRunner(ClassroomManager manager) {
+            this.manager = manager;
+            Map<String, Command> commands = new HashMap<>(teacherCommands(manager));
+            commands.remove("run_script");
+            this.commands = commands;
         }
-    }
 
-    public static class Submission {
-        private Student student;
-        private Assignment assignment;
-        private String submissionDetails;
-        private Date submittedOn;
+        public Result run(Path file) throws IOException {
+            try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                return run(reader);
+            }
+        }
 
-        public Submission(Student student, Assignment assignment, String submissionDetails) {
-            this.student = student;
-            this.assignment = assignment;
-            this.submissionDetails = submissionDetails;
-            this.submittedOn = new Date();
+        public Result run(BufferedReader reader) throws IOException {
+            long start = System.nanoTime();
+            Result result = new Result();
+            ArrayBlockingQueue<List<ScriptLine>> batches = new ArrayBlockingQueue<>(4);
+            IOException[] failure = new IOException[1];
+            Thread parser = new Thread(() -> parse(reader, batches, failure, result), "script-reader");
+            parser.setDaemon(true);
+            parser.start();
+            try {
+                List<ScriptLine> batch;
+                while ((batch = batches.take()) != END) {
+                    for (ScriptLine line : batch) {
+                        execute(line, result);
+                    }
+                }
+                parser.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Script interrupted", e);
+            } finally {
+                // Also reached when a command throws; otherwise the reader would wait forever on a full queue
+                parser.interrupt();
+            }
+            if (failure[0] != null) {
+                throw failure[0];
+            }
+            result.elapsedNanos = System.nanoTime() - start;
+            return result;
         }
 
-        public String getSubmissionDetails() {
-            return submissionDetails;
+        // Reader thread; result.lines is only read by the caller after join()
+        private static void parse(BufferedReader reader, ArrayBlockingQueue<List<ScriptLine>> batches, IOException[] failure, Result result) {
+            CommandTokenizer tokenizer = new CommandTokenizer();
+            List<ScriptLine> batch = new ArrayList<>(BATCH_SIZE);
+            long number = 0;
+            try {
+                try {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        number++;
+                        if (tokenizer.tokenize(line) == 0 || line.trim().startsWith("#")) {
+                            continue;
+                        }
+                        batch.add(new ScriptLine(number, tokenizer.token(0), tokenizer.toArray(1)));
+                        if (batch.size() == BATCH_SIZE) {
+                            batches.put(batch);
+                            batch = new ArrayList<>(BATCH_SIZE);
+                        }
+                    }
+                } catch (IOException e) {
+                    failure[0] = e;
+                }
+                result.lines = number;
+                if (!batch.isEmpty()) {
+                    batches.put(batch);
+                }
+                batches.put(END);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
         }
 
-        public Date getSubmittedOn() {
-            return submittedOn;
+        private void execute(ScriptLine line, Result result) {
+            Command command;
+            switch (line.command) {
+                case "as_student":
+                    if (line.args.length != 2) {
+                        Logger.log(Logger.Level.WARN, "Line {}: usage as_student <student_id> <name>", line.number, null, null);
+                        result.rejected++;
+                        return;
+                    }
+                    joinClassroom = new AddStudentCommand(manager, line.args[0], line.args[1]);
+                    submitAssignment = new SubmitAssignmentCommand(manager, line.args[0]);
+                    result.executed++;
+                    return;
+                case "join_classroom":
+                    command = joinClassroom;
+                    break;
+                case "submit_assignment":
+                    command = submitAssignment;
+                    break;
+                case "run_script":
+                    Logger.log(Logger.Level.WARN, "Line {}: a script cannot run another script", line.number, null, null);
+                    result.rejected++;
+                    return;
+                default:
+                    command = commands.get(line.command);
+                    if (command == null) {
+                        Logger.log(Logger.Level.WARN, "Line {}: unknown command {}", line.number, line.command, null);
+                        result.rejected++;
+                        return;
+                    }
+            }
+            if (command == null) {
+                Logger.log(Logger.Level.WARN, "Line {}: {} needs an as_student line first", line.number, line.command, null);
+                result.rejected++;
+                return;
+            }
+            command.execute(line.args);
+            result.executed++;
         }
     }
 
-    public static class ClassroomManager {
-        private List<Classroom> classrooms;
+    public static class RunScriptCommand implements Command {
+        private ClassroomManager manager;
 
-        public ClassroomManager() {
-            this.classrooms = new ArrayList<>();
+        public RunScriptCommand(ClassroomManager manager) {
+            this.manager = manager;
         }
 
-        public void addClassroom(String name) {
-            classrooms.add(new Classroom(name));
-            Logger.log("Classroom " + name + " has been created.");
+        @Override
+        public void execute(String[] args) {
+            if (args.length != 1) {
+                Logger.log("Invalid command format. Usage: run_script <file>");
+                return;
+            }
+            manager.runScript(Paths.get(args[0]));
         }
+    }
 
-        public void removeClassroom(String name) {
-            classrooms.removeIf(classroom -> classroom.getName().equals(name));
-            Logger.log("Classroom " + name + " has been removed.");
-        }
+    public static class SaveSnapshotCommand implements Command {
+        private ClassroomManager manager;
 
-        public List<Classroom> listClassrooms() {
-            return classrooms;
+        public SaveSnapshotCommand(ClassroomManager manager) {
+            this.manager = manager;
         }
 
-        public void scheduleAssignment(String className, String assignmentDetails, Date dueDate) {
-            for (Classroom classroom : classrooms) {
-                if (classroom.getName().equals(className)) {
-                    classroom.scheduleAssignment(new Assignment(assignmentDetails, dueDate));
-                    return;
-                }
+        @Override
+        public void execute(String[] args) {
+            if (args.length != 1) {
+                Logger.log("Invalid command format. Usage: save_snapshot <file>");
+                return;
             }
-            Logger.log("Classroom " + className + " not found.");
+            manager.saveSnapshot(Paths.get(args[0]));
         }
+    }
 
-        public void addStudent(String studentId, String studentName, String className) {
-            for (Classroom classroom : classrooms) {
-                if (classroom.getName().equals(className)) {
-                    classroom.addStudent(new Student(studentId, studentName));
-                    return;
-                }
-            }
-            Logger.log("Classroom " + className + " not found.");
+    public static class LoadSnapshotCommand implements Command {
+        private ClassroomManager manager;
+
+        public LoadSnapshotCommand(ClassroomManager manager) {
+            this.manager = manager;
         }
 
-        public void submitAssignment(String studentId, String className, String assignmentDetails, String submissionDetails) {
-            for (Classroom classroom : classrooms) {
-                if (classroom.getName().equals(className)) {
-                    for (Student student : classroom.listStudents()) {
-                        if (student.getId().equals(studentId)) {
-                            for (Assignment assignment : classroom.listAssignments()) {
-                                if (assignment.getDetails().equals(assignmentDetails)) {
-                                    student.submitAssignment(classroom, assignment, submissionDetails);
-                                    return;
-                                }
-                            }
-                        }
-                    }
-                }
+        @Override
+        public void execute(String[] args) {
+            if (args.length != 1) {
+                Logger.log("Invalid command format. Usage: load_snapshot <file>");
+                return;
             }
-            Logger.log("Submission failed: Classroom or Student or Assignment not found.");
+            manager.loadSnapshot(Paths.get(args[0]));
         }
+    }
 
-        public void listStudents(String className) {
-            for (Classroom classroom : classrooms) {
-                if (classroom.getName().equals(className)) {
-                    Logger.log("Students in " + className + ":");
-                    for (Student student : classroom.listStudents()) {
-                        Logger.log(" - " + student.getName() + " (ID: " + student.getId() + ")");
-                    }
-                    return;
-                }
+    public static class ImportRosterCommand implements Command {
+        private ClassroomManager manager;
+
+        public ImportRosterCommand(ClassroomManager manager) {
+            this.manager = manager;
+        }
+
+        @Override
+        public void execute(String[] args) {
+            if (args.length != 1) {
+                Logger.log("Invalid command format. Usage: import_roster <file>");
+                return;
             }
-            Logger.log("Classroom " + className + " not found.");
+            manager.importRoster(Paths.get(args[0]));
         }
     }
 
@@ -229,7 +2100,7 @@ public class VirtualClassroomManager {
         public void execute(String[] args) {
             Logger.log("Classrooms:");
             for (Classroom classroom : manager.listClassrooms()) {
-                Logger.log(" - " + classroom.getName());
+                Logger.info(" - {}", classroom.getName());
             }
         }
     }
@@ -251,13 +2122,46 @@ public class VirtualClassroomManager {
         }
     }
 
+    public static class StudentDashboardCommand implements Command {
+        private ClassroomManager manager;
+
+        public StudentDashboardCommand(ClassroomManager manager) {
+            this.manager = manager;
+        }
+
+        @Override
+        public void execute(String[] args) {
+            if (args.length != 1) {
+                Logger.log("Invalid command format. Usage: student_dashboard <student_id>");
+                return;
+            }
+            manager.showStudentDashboard(args[0]);
+        }
+    }
+
+    public static class ListSubmissionsCommand implements Command {
+        private ClassroomManager manager;
+
+        public ListSubmissionsCommand(ClassroomManager manager) {
+            this.manager = manager;
+        }
+
+        @Override
+        public void execute(String[] args) {
+            if (args.length != 2) {
+                Logger.log("Invalid command format. Usage: list_submissions <class_name> <assignment_details>");
+                return;
+            }
+            manager.listSubmissions(args[0], args[1]);
+        }
+    }
+
+    // Stateless, so one instance can be shared by any number of threads
     public static class ScheduleAssignmentCommand implements Command {
         private ClassroomManager manager;
-        private SimpleDateFormat dateFormat;
 
         public ScheduleAssignmentCommand(ClassroomManager manager) {
             this.manager = manager;
-            this.dateFormat = new SimpleDateFormat("yyyy-MM-dd");
         }
 
         @Override
@@ -266,12 +2170,12 @@ public class VirtualClassroomManager {
                 Logger.log("Invalid command format. Usage: schedule_assignment <class_name> <assignment_details> <due_date>");
                 return;
             }
-            try {
-                Date dueDate = dateFormat.parse(args[2]);
-                manager.scheduleAssignment(args[0], args[1], dueDate);
-            } catch (ParseException e) {
+            long dueDate = EpochDates.parse(args[2]);
+            if (dueDate == EpochDates.INVALID) {
                 Logger.log("Invalid date format. Please use yyyy-MM-dd.");
+                return;
             }
+            manager.scheduleAssignment(args[0], args[1], dueDate);
         }
     }
 
@@ -316,84 +2220,179 @@ public class VirtualClassroomManager {
     }
 
     public static void main(String[] args) {
-        ClassroomManager manager = new ClassroomManager();
-        Scanner scanner = new Scanner(System.in);
-        startProcess(manager, scanner);
-    }
-
-    private static void startProcess(ClassroomManager manager, Scanner scanner) {
-        System.out.print("Are you a teacher or a student? ");
-        String role = scanner.nextLine().trim().toLowerCase();
-
-        if ("teacher".equals(role)) {
-            processTeacherCommands(manager, scanner);
-        } else if ("student".equals(role)) {
-            if (manager.listClassrooms().isEmpty()) {
-                System.out.println("No classrooms available. Please wait for a teacher to create a classroom.");
-                startProcess(manager, scanner);
+        Path logFile = null;
+        Path snapshot = null;
+        Path script = null;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (args[i].equals("--log-file")) {
+                logFile = Paths.get(args[i + 1]);
+            } else if (args[i].equals("--snapshot")) {
+                snapshot = Paths.get(args[i + 1]);
+            } else if (args[i].equals("--script")) {
+                script = Paths.get(args[i + 1]);
             } else {
-                System.out.print("Enter your student ID: ");
-                String studentId = scanner.nextLine();
-                System.out.print("Enter your name: ");
-                String studentName = scanner.nextLine();
-                processStudentCommands(manager, scanner, studentId, studentName);
+                System.out.println("Ignoring unknown option " + args[i] + ".");
+            }
+        }
+        if (logFile != null) {
+            try {
+                Logger.useAsyncFile(logFile, 65536);
+                Runtime.getRuntime().addShutdownHook(new Thread(Logger::flush));
+            } catch (IOException e) {
+                System.out.println("Could not open log file " + logFile + ", logging to the console.");
             }
-        } else {
-            System.out.println("Invalid role. Please enter 'teacher' or 'student'.");
-            startProcess(manager, scanner);
         }
+        ClassroomManager manager = new ClassroomManager();
+        DeadlineScheduler deadlines = DeadlineScheduler.withDefaultActions(24L * 60 * 60 * 1000);
+        manager.setDeadlineScheduler(deadlines);
+        deadlines.start();
+        // Restores the state saved with save_snapshot; the file may not exist yet on a first start
+        if (snapshot != null && Files.exists(snapshot)) {
+            manager.loadSnapshot(snapshot);
+        }
+        if (script != null) {
+            manager.runScript(script);
+        }
+        Scanner scanner = new Scanner(System.in);
+        new Session(manager, scanner).run();
     }
 
-    private static void processTeacherCommands(ClassroomManager manager, Scanner scanner) {
-        Map<String, Command> commands = new HashMap<>();
+    // Every teacher command by name, in the order they are offered at the prompt
+    static Map<String, Command> teacherCommands(ClassroomManager manager) {
+        Map<String, Command> commands = new LinkedHashMap<>();
         commands.put("add_classroom", new AddClassroomCommand(manager));
         commands.put("remove_classroom", new RemoveClassroomCommand(manager));
         commands.put("list_classrooms", new ListClassroomsCommand(manager));
         commands.put("schedule_assignment", new ScheduleAssignmentCommand(manager));
         commands.put("list_students", new ListStudentsCommand(manager));
+        commands.put("list_submissions", new ListSubmissionsCommand(manager));
+        commands.put("import_roster", new ImportRosterCommand(manager));
+        commands.put("student_dashboard", new StudentDashboardCommand(manager));
+        commands.put("save_snapshot", new SaveSnapshotCommand(manager));
+        commands.put("load_snapshot", new LoadSnapshotCommand(manager));
+        commands.put("run_script", new RunScriptCommand(manager));
+        return Collections.unmodifiableMap(commands);
+    }
+
+    // Drives the interactive prompts as a loop over states rather than methods calling each other, so the stack
+    // stays flat however long the session runs. Teacher commands are built once per session, student
+    // commands once per login; dispatching an action allocates no command map.
+    public static class Session {
+        private enum State { CHOOSE_ROLE, TEACHER, STUDENT, DONE }
+
+        private final ClassroomManager manager;
+        private final Scanner scanner;
+        private final Map<String, Command> teacherCommands;
+        private final String teacherPrompt;
+        private Command joinClassroom;
+        private Command submitAssignment;
 
-        System.out.print("Enter the command (add_classroom, remove_classroom, list_classrooms, schedule_assignment, list_students): ");
-        String commandKey = scanner.nextLine().trim();
-        System.out.print("Enter command arguments separated by spaces: ");
-        String[] commandArgs = scanner.nextLine().trim().split(" ");
+        private final CommandTokenizer tokenizer = new CommandTokenizer();
 
-        if (commands.containsKey(commandKey)) {
-            commands.get(commandKey).execute(commandArgs);
-        } else {
-            System.out.println("Invalid command. Please try again.");
+        public Session(ClassroomManager manager, Scanner scanner) {
+            this.manager = manager;
+            this.scanner = scanner;
+            this.teacherCommands = teacherCommands(manager);
+            this.teacherPrompt = "Enter the command (" + String.join(", ", teacherCommands.keySet()) + "): ";
         }
 
-        System.out.print("Do you want to perform another teacher action? (yes/no): ");
-        if (scanner.nextLine().trim().equalsIgnoreCase("yes")) {
-            processTeacherCommands(manager, scanner);
-        } else {
-            startProcess(manager, scanner);
+        // Returns when the input runs out
+        public void run() {
+            State state = State.CHOOSE_ROLE;
+            while (state != State.DONE) {
+                switch (state) {
+                    case CHOOSE_ROLE:
+                        state = chooseRole();
+                        break;
+                    case TEACHER:
+                        state = teacherAction();
+                        break;
+                    case STUDENT:
+                        state = studentAction();
+                        break;
+                    default:
+                        state = State.DONE;
+                }
+            }
         }
-    }
 
-    private static void processStudentCommands(ClassroomManager manager, Scanner scanner, String studentId, String studentName) {
-        Map<String, Command> commands = new HashMap<>();
-        commands.put("join_classroom", new AddStudentCommand(manager, studentId, studentName));
-        commands.put("submit_assignment", new SubmitAssignmentCommand(manager, studentId));
+        private String prompt(String text) {
+            System.out.print(text);
+            return scanner.hasNextLine() ? scanner.nextLine() : null;
+        }
 
-        System.out.print("Enter the classroom name to join: ");
-        String className = scanner.nextLine();
-        commands.get("join_classroom").execute(new String[]{className});
+        private State chooseRole() {
+            String role = prompt("Are you a teacher or a student? ");
+            if (role == null) {
+                return State.DONE;
+            }
+            role = role.trim().toLowerCase();
+            if ("teacher".equals(role)) {
+                return State.TEACHER;
+            }
+            if (!"student".equals(role)) {
+                System.out.println("Invalid role. Please enter 'teacher' or 'student'.");
+                return State.CHOOSE_ROLE;
+            }
+            if (manager.listClassrooms().isEmpty()) {
+                System.out.println("No classrooms available. Please wait for a teacher to create a classroom.");
+                return State.CHOOSE_ROLE;
+            }
+            String studentId = prompt("Enter your student ID: ");
+            String studentName = studentId == null ? null : prompt("Enter your name: ");
+            if (studentName == null) {
+                return State.DONE;
+            }
+            joinClassroom = new AddStudentCommand(manager, studentId, studentName);
+            submitAssignment = new SubmitAssignmentCommand(manager, studentId);
+            return State.STUDENT;
+        }
 
-        System.out.print("Do you want to submit an assignment for this class? (yes/no): ");
-        if (scanner.nextLine().trim().equalsIgnoreCase("yes")) {
-            System.out.print("Enter the assignment details: ");
-            String assignmentDetails = scanner.nextLine();
-            System.out.print("Enter your submission details: ");
-            String submissionDetails = scanner.nextLine();
-            commands.get("submit_assignment").execute(new String[]{className, assignmentDetails, submissionDetails});
+        private State teacherAction() {
+            String commandKey = prompt(teacherPrompt);
+            String arguments = commandKey == null ? null : prompt("Enter command arguments separated by spaces: ");
+            if (arguments == null) {
+                return State.DONE;
+            }
+            Command command = teacherCommands.get(commandKey.trim());
+            if (command != null) {
+                tokenizer.tokenize(arguments);
+                command.execute(tokenizer.toArray(0));
+            } else {
+                System.out.println("Invalid command. Please try again.");
+            }
+            String again = prompt("Do you want to perform another teacher action? (yes/no): ");
+            if (again == null) {
+                return State.DONE;
+            }
+            return again.trim().equalsIgnoreCase("yes") ? State.TEACHER : State.CHOOSE_ROLE;
         }
 
-        System.out.print("Do you want to join another classroom? (yes/no): ");
-        if (scanner.nextLine().trim().equalsIgnoreCase("yes")) {
-            processStudentCommands(manager, scanner, studentId, studentName);
-        } else {
-            startProcess(manager, scanner);
+        private State studentAction() {
+            String className = prompt("Enter the classroom name to join: ");
+            if (className == null) {
+                return State.DONE;
+            }
+            joinClassroom.execute(new String[]{className});
+
+            String submit = prompt("Do you want to submit an assignment for this class? (yes/no): ");
+            if (submit == null) {
+                return State.DONE;
+            }
+            if (submit.trim().equalsIgnoreCase("yes")) {
+                String assignmentDetails = prompt("Enter the assignment details: ");
+                String submissionDetails = assignmentDetails == null ? null : prompt("Enter your submission details: ");
+                if (submissionDetails == null) {
+                    return State.DONE;
+                }
+                submitAssignment.execute(new String[]{className, assignmentDetails, submissionDetails});
+            }
+
+            String again = prompt("Do you want to join another classroom? (yes/no): ");
+            if (again == null) {
+                return State.DONE;
+            }
+            return again.trim().equalsIgnoreCase("yes") ? State.STUDENT : State.CHOOSE_ROLE;
         }
     }
 }
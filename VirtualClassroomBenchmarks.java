@@ -0,0 +1,275 @@
+// Runnable micro-benchmarks for VirtualClassRoom.java.
+// javac wants that file saved as VirtualClassroomManager.java; compile the two together, then run
+//   java VirtualClassroomBenchmarks [benchmark ...]
+// Every benchmark runs warmup rounds first and prints the best measured round, so compare variants
+// against each other on the same machine rather than reading the figures as absolute costs.
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.time.LocalDate;
+import java.util.*;
+
+public class VirtualClassroomBenchmarks {
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int MEASURED_ROUNDS = 5;
+
+    interface Benchmark {
+        void run() throws Exception;
+    }
+
+    // One measured operation batch; returns a value derived from the work so it cannot be optimized away
+    interface Workload {
+        double run();
+    }
+
+    static volatile double sink;
+
+    public static void main(String[] args) throws Exception {
+        Map<String, Benchmark> benchmarks = new LinkedHashMap<>();
+        benchmarks.put("lookups", VirtualClassroomBenchmarks::lookups);
+        benchmarks.put("logging", VirtualClassroomBenchmarks::logging);
+        benchmarks.put("dates", VirtualClassroomBenchmarks::dates);
+
+        List<String> selected = args.length == 0 ? new ArrayList<>(benchmarks.keySet()) : Arrays.asList(args);
+        for (String name : selected) {
+            Benchmark benchmark = benchmarks.get(name);
+            if (benchmark == null) {
+                System.out.println("Unknown benchmark " + name + ". Available: " + benchmarks.keySet());
+                continue;
+            }
+            System.out.println(name + ":");
+            benchmark.run();
+        }
+    }
+
+    // Best operations per second over the measured rounds
+    static double measure(long operationsPerRound, Workload workload) {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            sink += workload.run();
+        }
+        double best = 0;
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            long start = System.nanoTime();
+            sink += workload.run();
+            long elapsed = System.nanoTime() - start;
+            best = Math.max(best, operationsPerRound * 1e9 / elapsed);
+        }
+        return best;
+    }
+
+    static void report(String label, double operationsPerSecond, String unit) {
+        System.out.printf("  %-44s %,16.0f %s/s%n", label, operationsPerSecond, unit);
+    }
+
+    // The manager as it was before indexing: lists scanned by name, and a nested scan per submission
+    static class ScannedClassroom {
+        final String name;
+        final List<VirtualClassroomManager.Student> students = new ArrayList<>();
+        final List<VirtualClassroomManager.Assignment> assignments = new ArrayList<>();
+
+        ScannedClassroom(String name) {
+            this.name = name;
+        }
+    }
+
+    static VirtualClassroomManager.Assignment scanForSubmission(List<ScannedClassroom> classrooms, String studentId, String className, String details) {
+        for (ScannedClassroom classroom : classrooms) {
+            if (classroom.name.equals(className)) {
+                for (VirtualClassroomManager.Student student : classroom.students) {
+                    if (student.getId().equals(studentId)) {
+                        for (VirtualClassroomManager.Assignment assignment : classroom.assignments) {
+                            if (assignment.getDetails().equals(details)) {
+                                return assignment;
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    // Resolving (classroom, student, assignment) for a submission, linear scans vs. the indexed manager
+    static void lookups() {
+        VirtualClassroomManager.Logger.setLevel(VirtualClassroomManager.Logger.Level.WARN);
+        int classroomCount = 2000;
+        int studentsPerClassroom = 200;
+        int assignmentsPerClassroom = 10;
+        VirtualClassroomManager.ClassroomManager manager = new VirtualClassroomManager.ClassroomManager();
+        List<ScannedClassroom> scanned = new ArrayList<>(classroomCount);
+        for (int c = 0; c < classroomCount; c++) {
+            String className = "class-" + c;
+            manager.addClassroom(className);
+            ScannedClassroom old = new ScannedClassroom(className);
+            List<VirtualClassroomManager.Student> roster = new ArrayList<>(studentsPerClassroom);
+            for (int s = 0; s < studentsPerClassroom; s++) {
+                roster.add(new VirtualClassroomManager.Student("s-" + c + "-" + s, "Student " + s));
+            }
+            manager.getClassroom(className).addStudents(roster);
+            old.students.addAll(roster);
+            for (int a = 0; a < assignmentsPerClassroom; a++) {
+                manager.scheduleAssignment(className, "hw-" + a, 0);
+                old.assignments.add(manager.getClassroom(className).getAssignment("hw-" + a));
+            }
+            scanned.add(old);
+        }
+
+        int lookups = 1 << 16;
+        String[] classNames = new String[lookups];
+        String[] studentIds = new String[lookups];
+        String[] details = new String[lookups];
+        Random random = new Random(42);
+        for (int i = 0; i < lookups; i++) {
+            int c = random.nextInt(classroomCount);
+            classNames[i] = "class-" + c;
+            studentIds[i] = "s-" + c + "-" + random.nextInt(studentsPerClassroom);
+            details[i] = "hw-" + random.nextInt(assignmentsPerClassroom);
+        }
+
+        int scannedLookups = lookups / 64;
+        report("linear scans (before indexing)", measure(scannedLookups, () -> {
+            double found = 0;
+            for (int i = 0; i < scannedLookups; i++) {
+                if (scanForSubmission(scanned, studentIds[i], classNames[i], details[i]) != null) {
+                    found++;
+                }
+            }
+            return found;
+        }), "lookups");
+        report("indexed manager", measure(lookups, () -> {
+            double found = 0;
+            for (int i = 0; i < lookups; i++) {
+                VirtualClassroomManager.Classroom classroom = manager.getClassroom(classNames[i]);
+                if (classroom.getStudent(studentIds[i]) != null && classroom.getAssignment(details[i]) != null) {
+                    found++;
+                }
+            }
+            return found;
+        }), "lookups");
+        VirtualClassroomManager.Logger.setLevel(VirtualClassroomManager.Logger.Level.INFO);
+    }
+
+    // addStudent throughput with each way of logging the enrollment line. Console output is sent to a
+    // temporary file through a PrintStream set up like System.out, so the terminal does not dominate the figure.
+    static void logging() throws IOException {
+        int students = 100_000;
+        VirtualClassroomManager.Student[] roster = new VirtualClassroomManager.Student[students];
+        for (int i = 0; i < students; i++) {
+            roster[i] = new VirtualClassroomManager.Student("s-" + i, "Student " + i);
+        }
+        Path consoleFile = Files.createTempFile("classroom-console", ".log");
+        Path logFile = Files.createTempFile("classroom-async", ".log");
+        PrintStream console = System.out;
+        try (PrintStream redirected = new PrintStream(new BufferedOutputStream(new FileOutputStream(consoleFile.toFile()), 8192), true)) {
+            System.setOut(redirected);
+            // The old path printed its own line, so the Logger stays quiet for this variant
+            VirtualClassroomManager.Logger.setLevel(VirtualClassroomManager.Logger.Level.WARN);
+            double concatenated = measure(students, () -> {
+                VirtualClassroomManager.Classroom classroom = new VirtualClassroomManager.Classroom("bench");
+                for (VirtualClassroomManager.Student student : roster) {
+                    classroom.addStudent(student);
+                    System.out.println("Student " + student.getName() + " has been enrolled in " + classroom.getName() + ".");
+                }
+                return classroom.studentCount();
+            });
+            VirtualClassroomManager.Logger.setLevel(VirtualClassroomManager.Logger.Level.INFO);
+            double sync = measure(students, () -> enrollAll(roster));
+            VirtualClassroomManager.Logger.useAsyncFile(logFile, 65536);
+            double async = measure(students, () -> {
+                double enrolled = enrollAll(roster);
+                VirtualClassroomManager.Logger.flush();
+                return enrolled;
+            });
+            VirtualClassroomManager.Logger.useConsole();
+            VirtualClassroomManager.Logger.setLevel(VirtualClassroomManager.Logger.Level.WARN);
+            double disabled = measure(students, () -> enrollAll(roster));
+            VirtualClassroomManager.Logger.setLevel(VirtualClassroomManager.Logger.Level.INFO);
+            System.setOut(console);
+
+            report("concatenate + println baseline", concatenated, "enrollments");
+            report("Logger, console", sync, "enrollments");
+            report("Logger, async file (flushed each round)", async, "enrollments");
+            report("Logger, INFO disabled", disabled, "enrollments");
+        } finally {
+            System.setOut(console);
+            Files.deleteIfExists(consoleFile);
+            Files.deleteIfExists(logFile);
+        }
+    }
+
+    private static double enrollAll(VirtualClassroomManager.Student[] roster) {
+        VirtualClassroomManager.Classroom classroom = new VirtualClassroomManager.Classroom("bench");
+        for (VirtualClassroomManager.Student student : roster) {
+            classroom.addStudent(student);
+        }
+        return classroom.studentCount();
+    }
+
+    // Heap bytes allocated by the calling thread so far
+    static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    // Heap bytes one run of the workload allocates per operation, after it has been warmed up
+    static double bytesPerOperation(long operationsPerRun, Workload workload) {
+        sink += workload.run();
+        long before = allocatedBytes();
+        sink += workload.run();
+        return (double) (allocatedBytes() - before) / operationsPerRun;
+    }
+
+    // Parsing yyyy-MM-dd due dates: the SimpleDateFormat baseline vs. java.time vs. EpochDates,
+    // with the heap allocated per parse
+    static void dates() {
+        int count = 1 << 16;
+        String[] texts = new String[count];
+        Random random = new Random(42);
+        for (int i = 0; i < count; i++) {
+            texts[i] = String.format("%04d-%02d-%02d", 2000 + random.nextInt(40), 1 + random.nextInt(12), 1 + random.nextInt(28));
+        }
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd");
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        format.setLenient(false);
+
+        Workload simpleDateFormat = () -> {
+            double total = 0;
+            for (String text : texts) {
+                try {
+                    total += format.parse(text).getTime();
+                } catch (ParseException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+            return total;
+        };
+        Workload javaTime = () -> {
+            double total = 0;
+            for (String text : texts) {
+                total += LocalDate.parse(text).toEpochDay();
+            }
+            return total;
+        };
+        Workload epochDates = () -> {
+            double total = 0;
+            for (String text : texts) {
+                total += VirtualClassroomManager.EpochDates.parse(text);
+            }
+            return total;
+        };
+        reportParse("SimpleDateFormat baseline", count, simpleDateFormat);
+        reportParse("LocalDate.parse", count, javaTime);
+        reportParse("EpochDates.parse", count, epochDates);
+    }
+
+    private static void reportParse(String label, int count, Workload workload) {
+        double perSecond = measure(count, workload);
+        System.out.printf("  %-44s %,16.0f parses/s %,8.1f bytes/parse%n", label, perSecond, bytesPerOperation(count, workload));
+    }
+}
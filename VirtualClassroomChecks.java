@@ -0,0 +1,444 @@
+// Runnable stress and regression checks for VirtualClassRoom.java.
+// javac wants that file saved as VirtualClassroomManager.java; compile the two together, then run
+//   java VirtualClassroomChecks [check ...]
+// With no arguments every check runs. Any failed check makes the program exit with status 1.
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class VirtualClassroomChecks {
+    private static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+
+    interface Check {
+        void run() throws Exception;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, Check> checks = new LinkedHashMap<>();
+        checks.put("enroll-stress", VirtualClassroomChecks::enrollStress);
+        checks.put("due-day-cutoff", VirtualClassroomChecks::dueDayCutoff);
+        checks.put("foreign-submission", VirtualClassroomChecks::foreignSubmission);
+        checks.put("long-session", VirtualClassroomChecks::longSession);
+        checks.put("corrupt-snapshot", VirtualClassroomChecks::corruptSnapshot);
+        checks.put("script-failures", VirtualClassroomChecks::scriptFailures);
+
+        // The checks drive thousands of enrollments; only warnings and errors are worth printing
+        VirtualClassroomManager.Logger.setLevel(VirtualClassroomManager.Logger.Level.WARN);
+        List<String> selected = args.length == 0 ? new ArrayList<>(checks.keySet()) : Arrays.asList(args);
+        int failed = 0;
+        for (String name : selected) {
+            Check check = checks.get(name);
+            if (check == null) {
+                System.out.println("Unknown check " + name + ". Available: " + checks.keySet());
+                failed++;
+                continue;
+            }
+            long start = System.nanoTime();
+            try {
+                check.run();
+                System.out.printf("PASSED %s (%.2f s)%n", name, (System.nanoTime() - start) / 1e9);
+            } catch (AssertionError | Exception e) {
+                System.out.println("FAILED " + name + ": " + e);
+                failed++;
+            }
+        }
+        if (failed > 0) {
+            System.exit(1);
+        }
+    }
+
+    static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+
+    // Runs the task on every thread at once and waits for all of them
+    static void runConcurrently(int threads, java.util.function.IntConsumer task) throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        Throwable[] failure = new Throwable[1];
+        for (int t = 0; t < threads; t++) {
+            int index = t;
+            Thread worker = new Thread(() -> {
+                try {
+                    start.await();
+                    task.accept(index);
+                } catch (Throwable e) {
+                    synchronized (failure) {
+                        failure[0] = e;
+                    }
+                }
+            });
+            workers.add(worker);
+            worker.start();
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        if (failure[0] != null) {
+            throw new AssertionError("Worker failed: " + failure[0], failure[0]);
+        }
+    }
+
+    // Parallel enrollments into shared classrooms, while assignments are scheduled, are never lost
+    static void enrollStress() throws Exception {
+        VirtualClassroomManager.ClassroomManager manager = new VirtualClassroomManager.ClassroomManager();
+        int classrooms = 8;
+        for (int c = 0; c < classrooms; c++) {
+            manager.addClassroom("class-" + c);
+        }
+        int threads = 8;
+        int studentsPerThread = 4000;
+        int contested = 500;
+        int assignments = 20;
+        AtomicInteger contestedWins = new AtomicInteger();
+
+        // Thread 0 also schedules assignments; the others enroll singly or in batches, each student into two
+        // classrooms, and every thread races the others to enroll the same contested ids into class-0
+        runConcurrently(threads, t -> {
+            List<VirtualClassroomManager.Student> batch = new ArrayList<>();
+            for (int s = 0; s < studentsPerThread; s++) {
+                String id = "s-" + t + "-" + s;
+                if (t == 0 && s % (studentsPerThread / assignments) == 0) {
+                    for (int c = 0; c < classrooms; c++) {
+                        manager.scheduleAssignment("class-" + c, "hw-" + s, 0);
+                    }
+                }
+                check(manager.addStudent(id, "Student " + s, "class-" + (s % classrooms)), id + " was rejected");
+                batch.add(new VirtualClassroomManager.Student(id, "Student " + s));
+                if (batch.size() == 64) {
+                    int added = manager.getClassroom("class-" + ((t + 1) % classrooms)).addStudents(batch);
+                    check(added == batch.size() - countIn(batch, (t + 1) % classrooms, classrooms), "batch enrollment lost students");
+                    batch.clear();
+                }
+                if (s < contested && manager.addStudent("contested-" + s, "Contested " + s, "class-0")) {
+                    contestedWins.incrementAndGet();
+                }
+            }
+            manager.getClassroom("class-" + ((t + 1) % classrooms)).addStudents(batch);
+        });
+
+        check(contestedWins.get() == contested, contestedWins.get() + " wins for " + contested + " contested ids");
+        int enrolled = 0;
+        for (int c = 0; c < classrooms; c++) {
+            enrolled += manager.getClassroom("class-" + c).studentCount();
+        }
+        int expected = threads * studentsPerThread * 2 - countSameClassroom(threads, studentsPerThread, classrooms) + contested;
+        check(enrolled == expected, enrolled + " enrollments, expected " + expected);
+
+        VirtualClassroomManager.StudentRegistry registry = manager.getStudentRegistry();
+        for (int t = 0; t < threads; t++) {
+            for (int s = 0; s < studentsPerThread; s++) {
+                String id = "s-" + t + "-" + s;
+                int classes = s % classrooms == (t + 1) % classrooms ? 1 : 2;
+                check(manager.getClassroom("class-" + (s % classrooms)).getStudent(id) != null, id + " missing from its classroom");
+                check(registry.getEnrollments(id).size() == classes, id + " has " + registry.getEnrollments(id).size() + " enrollments in the registry");
+                check(registry.getPendingAssignments(id).size() == classes * assignments, id + " has " + registry.getPendingAssignments(id).size() + " pending assignments");
+            }
+        }
+    }
+
+    // Students of a batch whose single enrollment already put them in the batch's classroom
+    private static int countIn(List<VirtualClassroomManager.Student> batch, int classroom, int classrooms) {
+        int count = 0;
+        for (VirtualClassroomManager.Student student : batch) {
+            String id = student.getId();
+            if (Integer.parseInt(id.substring(id.lastIndexOf('-') + 1)) % classrooms == classroom) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static int countSameClassroom(int threads, int studentsPerThread, int classrooms) {
+        int count = 0;
+        for (int t = 0; t < threads; t++) {
+            for (int s = 0; s < studentsPerThread; s++) {
+                if (s % classrooms == (t + 1) % classrooms) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    // An assignment due today stays open until midnight UTC, one due yesterday closes straight away
+    static void dueDayCutoff() throws Exception {
+        Map<String, List<VirtualClassroomManager.DeadlineScheduler.EventType>> fired = new ConcurrentHashMap<>();
+        VirtualClassroomManager.DeadlineScheduler deadlines = new VirtualClassroomManager.DeadlineScheduler(10, 2 * DAY_MILLIS,
+                (type, className, assignment) -> {
+                    fired.computeIfAbsent(assignment.getDetails(), details -> new CopyOnWriteArrayList<>()).add(type);
+                    if (type == VirtualClassroomManager.DeadlineScheduler.EventType.CLOSE) {
+                        assignment.close();
+                    }
+                });
+        VirtualClassroomManager.ClassroomManager manager = new VirtualClassroomManager.ClassroomManager();
+        manager.setDeadlineScheduler(deadlines);
+        deadlines.start();
+        try {
+            manager.addClassroom("math");
+            manager.addStudent("s-1", "Ada", "math");
+            long today = Math.floorDiv(System.currentTimeMillis(), DAY_MILLIS) * DAY_MILLIS;
+            check(VirtualClassroomManager.EpochDates.parse(VirtualClassroomManager.EpochDates.format(today)) == today, "today does not round-trip");
+            manager.scheduleAssignment("math", "due-today", today);
+            manager.scheduleAssignment("math", "due-yesterday", today - DAY_MILLIS);
+
+            // The two-day reminder lead puts both reminders in the past, so they fire on the first ticks
+            long deadline = System.nanoTime() + 5_000_000_000L;
+            while (fired.getOrDefault("due-today", Collections.emptyList()).isEmpty() || !manager.getClassroom("math").getAssignment("due-yesterday").isClosed()) {
+                check(System.nanoTime() < deadline, "deadline events did not fire: " + fired);
+                Thread.sleep(10);
+            }
+            Thread.sleep(100);
+
+            VirtualClassroomManager.Assignment dueToday = manager.getClassroom("math").getAssignment("due-today");
+            check(dueToday.getClosingTime() == today + DAY_MILLIS, "due-today closes at " + dueToday.getClosingTime());
+            check(fired.get("due-today").equals(List.of(VirtualClassroomManager.DeadlineScheduler.EventType.REMINDER)), "due-today fired " + fired.get("due-today"));
+            check(!dueToday.isClosed(), "an assignment due today was closed before the day ended");
+            manager.submitAssignment("s-1", "math", "due-today", "answers");
+            manager.submitAssignment("s-1", "math", "due-yesterday", "late answers");
+            VirtualClassroomManager.Classroom math = manager.getClassroom("math");
+            check(math.listSubmitted(dueToday).size() == 1, "submission on the due day was refused");
+            check(math.listSubmitted(math.getAssignment("due-yesterday")).isEmpty(), "submission after the cutoff was accepted");
+        } finally {
+            deadlines.stop();
+        }
+    }
+
+    // Submitting to a classroom the student is not enrolled in, or with another classroom's assignment, is refused
+    static void foreignSubmission() {
+        VirtualClassroomManager.ClassroomManager manager = new VirtualClassroomManager.ClassroomManager();
+        manager.addClassroom("math");
+        manager.addClassroom("art");
+        manager.addStudent("s-1", "Ada", "math");
+        manager.addStudent("s-2", "Grace", "art");
+        manager.scheduleAssignment("math", "hw", 0);
+        manager.scheduleAssignment("art", "hw", 0);
+        VirtualClassroomManager.Classroom math = manager.getClassroom("math");
+        VirtualClassroomManager.Classroom art = manager.getClassroom("art");
+        VirtualClassroomManager.Student stranger = art.getStudent("s-2");
+        VirtualClassroomManager.Assignment mathHomework = math.getAssignment("hw");
+
+        stranger.submitAssignment(math, mathHomework, "not enrolled");
+        check(math.listSubmitted(mathHomework).isEmpty(), "a student who is not enrolled submitted");
+        check(math.getSubmission(stranger, mathHomework) == null, "a submission was found for a student who is not enrolled");
+        math.getStudent("s-1").submitAssignment(math, art.getAssignment("hw"), "wrong classroom");
+        check(art.listSubmitted(art.getAssignment("hw")).isEmpty() && math.listSubmitted(mathHomework).isEmpty(),
+                "another classroom's assignment accepted a submission");
+        math.getStudent("s-1").submitAssignment(math, mathHomework, "answers");
+        check(math.getSubmission(math.getStudent("s-1"), mathHomework) != null, "an enrolled student's submission was lost");
+    }
+
+    // Streams a prologue, a block repeated many times and an epilogue without holding the whole script in memory
+    static class RepeatingReader extends Reader {
+        private final String[] parts;
+        private final long repeats;
+        private long emitted;
+        private int part;
+        private int position;
+
+        RepeatingReader(String prologue, String block, long repeats, String epilogue) {
+            this.parts = new String[]{prologue, block, epilogue};
+            this.repeats = repeats;
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int length) {
+            int written = 0;
+            while (written < length && part < parts.length) {
+                String text = parts[part];
+                int count = Math.min(length - written, text.length() - position);
+                text.getChars(position, position + count, buffer, offset + written);
+                written += count;
+                position += count;
+                if (position == text.length()) {
+                    position = 0;
+                    if (part != 1 || ++emitted >= repeats) {
+                        part++;
+                    }
+                }
+            }
+            return written == 0 ? -1 : written;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    // Reads the first reader to its end, then the second
+    static class SequenceReader extends Reader {
+        private final Reader first;
+        private final Reader second;
+        private boolean firstDone;
+
+        SequenceReader(Reader first, Reader second) {
+            this.first = first;
+            this.second = second;
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int length) throws IOException {
+            if (!firstDone) {
+                int read = first.read(buffer, offset, length);
+                if (read >= 0) {
+                    return read;
+                }
+                firstDone = true;
+            }
+            return second.read(buffer, offset, length);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    // A scripted session of two million actions runs on a 256 KB stack
+    static void longSession() throws Exception {
+        int actions = 1_000_000;
+        VirtualClassroomManager.ClassroomManager manager = new VirtualClassroomManager.ClassroomManager();
+        String teacher = "teacher\nadd_classroom\nmath\nyes\nschedule_assignment\nmath hw 2030-01-01\nyes\n";
+        String teacherBlock = "list_students\nmath\nyes\n";
+        String studentBlock = "math\nyes\nhw\nanswers\nyes\n";
+        Reader script = new SequenceReader(
+                new RepeatingReader(teacher, teacherBlock, actions, "list_classrooms\n\nno\nstudent\ns-1\nAda\n"),
+                new RepeatingReader("", studentBlock, actions, ""));
+        Throwable[] failure = new Throwable[1];
+        PrintStream console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            Thread session = new Thread(null, () -> {
+                try {
+                    new VirtualClassroomManager.Session(manager, new Scanner(script)).run();
+                } catch (Throwable e) {
+                    failure[0] = e;
+                }
+            }, "scripted-session", 256 * 1024);
+            session.start();
+            session.join();
+        } finally {
+            System.setOut(console);
+        }
+        check(failure[0] == null, "session failed: " + failure[0]);
+        VirtualClassroomManager.Classroom math = manager.getClassroom("math");
+        check(math != null && math.studentCount() == 1, "the student was not enrolled");
+        check(math.listSubmitted(math.getAssignment("hw")).size() == 1, "the submission was not recorded");
+    }
+
+    // Every truncation and every single-byte corruption of a snapshot either loads or fails with an IOException,
+    // and a classroom only shows up in the manager once all of it has been restored
+    static void corruptSnapshot() throws Exception {
+        VirtualClassroomManager.ClassroomManager source = new VirtualClassroomManager.ClassroomManager();
+        for (String name : new String[] {"math", "art"}) {
+            source.addClassroom(name);
+            for (int s = 0; s < 3; s++) {
+                source.addStudent(name + "-" + s, "Student " + s, name);
+            }
+            source.scheduleAssignment(name, "hw-1", 0);
+            source.scheduleAssignment(name, "hw-2", 0);
+            source.submitAssignment(name + "-1", name, "hw-1", "answers");
+        }
+        Path file = Files.createTempFile("classroom-snapshot", ".bin");
+        try {
+            new VirtualClassroomManager.ClassroomSnapshot(source).save(file);
+            byte[] valid = Files.readAllBytes(file);
+            for (int length = 0; length < valid.length; length++) {
+                Files.write(file, Arrays.copyOf(valid, length));
+                VirtualClassroomManager.ClassroomManager target = new VirtualClassroomManager.ClassroomManager();
+                boolean rejected = false;
+                try {
+                    new VirtualClassroomManager.ClassroomSnapshot(target).load(file);
+                } catch (IOException e) {
+                    rejected = true;
+                }
+                check(rejected, "a snapshot truncated to " + length + " bytes loaded");
+                for (VirtualClassroomManager.Classroom classroom : target.listClassrooms()) {
+                    check(classroom.studentCount() == 3 && classroom.listAssignments().size() == 2
+                                    && classroom.listSubmitted(classroom.getAssignment("hw-1")).size() == 1,
+                            "a partly restored classroom " + classroom.getName() + " was left behind at " + length + " bytes");
+                }
+            }
+            for (int position = 0; position < valid.length; position++) {
+                for (int value : new int[] {0x00, 0x7F, 0x80, 0xFF}) {
+                    byte[] corrupt = valid.clone();
+                    corrupt[position] = (byte) value;
+                    Files.write(file, corrupt);
+                    try {
+                        new VirtualClassroomManager.ClassroomSnapshot(new VirtualClassroomManager.ClassroomManager()).load(file);
+                    } catch (IOException expected) {
+                        // Rejecting the snapshot is fine; any other exception or error is not
+                    } catch (RuntimeException | Error e) {
+                        throw new AssertionError("byte " + position + " set to " + value + " failed with " + e, e);
+                    }
+                }
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    // A script cannot run another script, and a command that throws stops the reader thread instead of
+    // leaving it blocked on a full queue with the file still open
+    static void scriptFailures() throws Exception {
+        Path file = Files.createTempFile("classroom-script", ".txt");
+        try {
+            Files.write(file, Arrays.asList("add_classroom math", "run_script " + file, "add_classroom art"));
+            VirtualClassroomManager.ClassroomManager manager = new VirtualClassroomManager.ClassroomManager();
+            VirtualClassroomManager.ScriptRunner.Result result = new VirtualClassroomManager.ScriptRunner(manager).run(file);
+            check(result.getExecuted() == 2 && manager.listClassrooms().size() == 2, "a script ran another script: " + result);
+
+            List<String> lines = new ArrayList<>();
+            for (int i = 0; i < 20_000; i++) {
+                lines.add("add_classroom room-" + i);
+            }
+            Files.write(file, lines);
+            PrintStream console = System.out;
+            // The first command's log line throws, long before the reader has finished the file
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()) {
+                @Override
+                public void println(Object line) {
+                    throw new IllegalStateException("console unavailable");
+                }
+            });
+            VirtualClassroomManager.Logger.setLevel(VirtualClassroomManager.Logger.Level.INFO);
+            try {
+                new VirtualClassroomManager.ScriptRunner(new VirtualClassroomManager.ClassroomManager()).run(file);
+                check(false, "the failing command was not reported");
+            } catch (IllegalStateException expected) {
+                // The command's exception reaches the caller
+            } finally {
+                VirtualClassroomManager.Logger.setLevel(VirtualClassroomManager.Logger.Level.WARN);
+                System.setOut(console);
+            }
+            long deadline = System.nanoTime() + 5_000_000_000L;
+            while (readerAlive() && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            check(!readerAlive(), "the script reader thread is still running after the script failed");
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static boolean readerAlive() {
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().equals("script-reader") && thread.isAlive()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+}